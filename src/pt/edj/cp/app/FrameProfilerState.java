@@ -0,0 +1,258 @@
+package pt.edj.cp.app;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.font.BitmapFont;
+import com.jme3.font.BitmapText;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Times the subsystems of each frame and keeps the last WINDOW frames per
+ * subsystem, so p50/p95/p99/max can be shown in an overlay and written to a
+ * CSV file at regular intervals.
+ *
+ * Code that is to be measured brackets its work with begin() and end().
+ * Both are static and cost next to nothing while no profiler is attached.
+ * Sections are accumulated per frame, a frame ends in postRender().
+ * All timing happens on the render thread, except for the physics step,
+ * which is measured through a PhysicsTickListener. With parallel physics
+ * that listener runs on the physics thread, and a step that is still
+ * running in postRender() is counted in the next frame.
+ */
+public class FrameProfilerState extends AbstractAppState {
+
+    private static final Logger logger = Logger.getLogger(FrameProfilerState.class.getName());
+
+    public static final int PHYSICS = 0;
+    public static final int MOVEMENT = 1;
+    public static final int PLATFORMS = 2;
+    public static final int THEME = 3;
+    public static final int BACKGROUND = 4;
+    public static final int NOISE_FILTER = 5;
+    public static final int AUDIO = 6;
+    public static final int FRAME = 7;
+
+    private static final String[] SECTION_NAMES = {
+        "physics", "movement", "platforms", "theme", "background", "noisefilter", "audio", "frame"
+    };
+
+    private static final int WINDOW = 600;
+    private static final float OVERLAY_INTERVAL = 0.5f;
+
+    private static volatile FrameProfilerState active = null;
+
+
+    public static long begin() {
+        return (active != null) ? System.nanoTime() : 0L;
+    }
+
+
+    public static void end(int section, long start) {
+        FrameProfilerState p = active;
+        if (p != null && start != 0L)
+            p.frameNanos[section] += System.nanoTime() - start;
+    }
+
+
+    private final long[] frameNanos = new long[SECTION_NAMES.length];
+    private final long[][] window = new long[SECTION_NAMES.length][WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int frames = 0;
+    private long frameStart = 0L;
+
+    private final boolean showOverlay;
+    private final String csvPath;
+    private final float csvInterval;
+
+    private SimpleApplication app;
+    private BitmapText overlay;
+    private float overlayTimer = 0.0f;
+    private float csvTimer = 0.0f;
+    private float totalTime = 0.0f;
+    private PrintWriter csv;
+
+    private PhysicsSpace physicsSpace;
+    private long physicsStart = 0L;
+    private final AtomicLong physicsNanos = new AtomicLong();
+
+    private PhysicsTickListener physicsTimer = new PhysicsTickListener() {
+        public void prePhysicsTick(PhysicsSpace space, float tpf) {
+            physicsStart = System.nanoTime();
+        }
+
+        public void physicsTick(PhysicsSpace space, float tpf) {
+            if (physicsStart != 0L)
+                physicsNanos.addAndGet(System.nanoTime() - physicsStart);
+            physicsStart = 0L;
+        }
+    };
+
+
+    /**
+     * @param showOverlay   draw the percentiles on screen
+     * @param csvPath       file to append snapshots to, or null
+     * @param csvInterval   seconds between two snapshots
+     */
+    public FrameProfilerState(boolean showOverlay, String csvPath, float csvInterval) {
+        this.showOverlay = showOverlay;
+        this.csvPath = csvPath;
+        this.csvInterval = csvInterval;
+    }
+
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        this.app = (SimpleApplication) app;
+
+        if (showOverlay) {
+            BitmapFont font = app.getAssetManager().loadFont("Interface/Fonts/Console.fnt");
+            overlay = new BitmapText(font);
+            overlay.setLocalTranslation(10, app.getCamera().getHeight() - 10, 0);
+            this.app.getGuiNode().attachChild(overlay);
+        }
+
+        if (csvPath != null) {
+            try {
+                csv = new PrintWriter(new FileWriter(csvPath, true));
+                csv.println("time,section,p50_ms,p95_ms,p99_ms,max_ms");
+                csv.flush();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Cannot write profiler snapshots to " + csvPath, e);
+            }
+        }
+
+        active = this;
+    }
+
+
+    @Override
+    public void update(float tpf) {
+        // the physics space only exists once the ingame state is up
+        if (physicsSpace == null) {
+            BulletAppState bullet = app.getStateManager().getState(BulletAppState.class);
+            if (bullet != null && bullet.getPhysicsSpace() != null) {
+                physicsSpace = bullet.getPhysicsSpace();
+                physicsSpace.addTickListener(physicsTimer);
+            }
+        }
+
+        totalTime += tpf;
+
+        if (overlay != null && (overlayTimer += tpf) >= OVERLAY_INTERVAL) {
+            overlayTimer = 0.0f;
+            updateOverlay();
+        }
+
+        if (csv != null && (csvTimer += tpf) >= csvInterval) {
+            csvTimer = 0.0f;
+            writeSnapshot();
+        }
+    }
+
+
+    @Override
+    public void postRender() {
+        long now = System.nanoTime();
+        frameNanos[PHYSICS] += physicsNanos.getAndSet(0L);
+
+        // the first frame has no frame time, it is left out of the window
+        if (frameStart == 0L) {
+            frameStart = now;
+            Arrays.fill(frameNanos, 0L);
+            return;
+        }
+        frameNanos[FRAME] = now - frameStart;
+        frameStart = now;
+
+        int slot = frames % WINDOW;
+        for (int s = 0; s < frameNanos.length; s++) {
+            window[s][slot] = frameNanos[s];
+            frameNanos[s] = 0L;
+        }
+        frames++;
+    }
+
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+
+        if (active == this)
+            active = null;
+        if (physicsSpace != null)
+            physicsSpace.removeTickListener(physicsTimer);
+        if (overlay != null)
+            overlay.removeFromParent();
+        if (csv != null) {
+            writeSnapshot();
+            csv.close();
+            csv = null;
+        }
+    }
+
+
+    private static int percentileIndex(int n, float percentile) {
+        int i = (int) Math.ceil(percentile / 100.0f * n) - 1;
+        return Math.max(0, Math.min(n - 1, i));
+    }
+
+
+    /**
+     * Fills p50, p95, p99 and max of a section into result, in milliseconds
+     */
+    private void computeStats(int section, float[] result) {
+        int n = Math.min(frames, WINDOW);
+        if (n == 0) {
+            Arrays.fill(result, 0.0f);
+            return;
+        }
+
+        System.arraycopy(window[section], 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        result[0] = sorted[percentileIndex(n, 50)] / 1.0e6f;
+        result[1] = sorted[percentileIndex(n, 95)] / 1.0e6f;
+        result[2] = sorted[percentileIndex(n, 99)] / 1.0e6f;
+        result[3] = sorted[n - 1] / 1.0e6f;
+    }
+
+
+    private void updateOverlay() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-12s %7s %7s %7s %7s%n", "ms", "p50", "p95", "p99", "max"));
+
+        float[] stats = new float[4];
+        for (int s = 0; s < SECTION_NAMES.length; s++) {
+            computeStats(s, stats);
+            sb.append(String.format(Locale.US, "%-12s %7.2f %7.2f %7.2f %7.2f%n",
+                    SECTION_NAMES[s], stats[0], stats[1], stats[2], stats[3]));
+        }
+
+        overlay.setText(sb.toString());
+    }
+
+
+    private void writeSnapshot() {
+        float[] stats = new float[4];
+        for (int s = 0; s < SECTION_NAMES.length; s++) {
+            computeStats(s, stats);
+            csv.printf(Locale.US, "%.2f,%s,%.3f,%.3f,%.3f,%.3f%n",
+                    totalTime, SECTION_NAMES[s], stats[0], stats[1], stats[2], stats[3]);
+        }
+        csv.flush();
+    }
+
+}
@@ -15,18 +15,18 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 import com.jme3.scene.shape.Box;
 import com.jme3.texture.Texture;
-import java.util.HashSet;
-import java.util.Random;
 import pt.edj.cp.audio.BackgroundSoundsPlayer;
 import pt.edj.cp.audio.SoundController;
 import pt.edj.cp.bonus.Bonus;
 import pt.edj.cp.character.CharacterAnimator;
 import pt.edj.cp.input.IngameInputsState;
+import pt.edj.cp.physics.RecenteringBroadphase;
 import pt.edj.cp.physics.PlatformerCharacterControl;
 import pt.edj.cp.physics.WorldPhysicsManager;
 import pt.edj.cp.timing.GameThemeController;
 import pt.edj.cp.timing.ChordController;
 import pt.edj.cp.timing.Metronome;
+import pt.edj.cp.util.HashRandom;
 import pt.edj.cp.util.SoundPathManager;
 import pt.edj.cp.util.WhiteNoiseFilter;
 import pt.edj.cp.world.PlatformLifecycleManager;
@@ -37,6 +37,7 @@ import pt.edj.cp.world.items.TemperatureChangePill;
 import pt.edj.cp.world.platforms.Platform;
 import pt.edj.cp.world.platforms.PlatformCollisionListener;
 import pt.edj.cp.world.platforms.PlatformFactory;
+import pt.edj.cp.world.platforms.PlatformScheduler;
 
 
 public class IngameState extends AbstractAppState {
@@ -47,13 +48,19 @@ public class IngameState extends AbstractAppState {
     private static final float CAM_Z_OFFSET = 25f; //18
     private static final float BG_SIZE_Y = 28;
     
+    // stream ids for the per-collectable choices
+    private static final int STREAM_ITEM_TYPE = 0;
+    private static final int STREAM_ITEM_INCREASE = 1;
+    private static final int STREAM_ITEM_STRENGTH = 2;
+    
     private SimpleApplication app;
     private PlatformLifecycleManager lifecycleManager;
     private PlatformFactory platformFactory;
-    private HashSet<Platform> allPlatforms;
+    private PlatformScheduler platformScheduler;
     
     private IngameInputsState ingameInputState;
     private WorldPhysicsManager physicsMgr;
+    private PlatformCollisionListener collisionListener;
     private PlatformerCharacterControl characterControl;
     
     private Node sceneNode;
@@ -66,8 +73,6 @@ public class IngameState extends AbstractAppState {
     
     private WhiteNoiseFilter whiteNoiseFilter;
     
-    private Random random = new Random();
-    
     private SoundController soundController;
     private Bonus bonus;
     
@@ -107,13 +112,34 @@ public class IngameState extends AbstractAppState {
         constructScene();
         
         //load and apply physics
-        physicsMgr = new WorldPhysicsManager(app, sceneNode, characterNode);
+        physicsMgr = new WorldPhysicsManager(app, sceneNode, characterNode,
+                this.app.getContext().getSettings().getBoolean("ParallelPhysics"));
         physicsMgr.addChildrenToPhysicsScene(sceneNode);
-        physicsMgr.getPhysicsSpace().addCollisionListener(new PlatformCollisionListener());
+        collisionListener = new PlatformCollisionListener();
+        physicsMgr.getPhysicsSpace().addCollisionListener(collisionListener);
+        physicsMgr.getPhysicsSpace().addTickListener(collisionListener);
+        // clusters of 4x4 zones, see PlatformLifecycleManager below
+        if (this.app.getContext().getSettings().getBoolean("CompoundPlatforms"))
+            physicsMgr.enableCompoundClusters(new Vector2f(16, 12));
+        // one hash cell per zone
+        if (!this.app.getContext().getSettings().getBoolean("CollectableGhosts"))
+            physicsMgr.enableCollectableSensor(4f);
         
         characterControl = (PlatformerCharacterControl) physicsMgr.getCharacterControl();
         characterControl.addMovementListener(whiteNoiseFilter);
         
+        // the sweep covers the destroy radius of the lifecycle window below,
+        // plus the distance to the next rebuild
+        String broadphase = this.app.getContext().getSettings().getString("Broadphase");
+        if ("dbvt-tuned".equals(broadphase))
+            physicsMgr.tuneDbvt(4f, 0, 2);
+        else if ("sweep".equals(broadphase)) {
+            RecenteringBroadphase sweep = physicsMgr.useRecenteringBroadphase(
+                    new Vector3f(64, 48, 16), new Vector3f(16, 12, 8), 16384);
+            if (sweep != null)
+                characterControl.addMovementListener(sweep);
+        }
+        
         //(temp) add bg and light
         addLightTEMP();
         addBackgroundNode();
@@ -126,16 +152,27 @@ public class IngameState extends AbstractAppState {
         stateManager.attach(ingameInputState = new IngameInputsState(
                 characterControl,
                 charAnim));
+        String recording = this.app.getContext().getSettings().getString("InputRecording");
+        if (recording != null)
+            ingameInputState.recordTo(recording);
         
         //setup camera
         setupCamera();
         
         // Connect platform creation engine with character movement
-        allPlatforms = new HashSet<Platform>();
-        SoundPathManager spm = new SoundPathManager();
+        platformScheduler = new PlatformScheduler();
+        platformScheduler.setParallel(app.getContext().getSettings().getBoolean("ParallelPlatforms"));
+        // a fixed world seed makes simulation runs repeatable
+        String seed = this.app.getContext().getSettings().getString("WorldSeed");
+        SoundPathManager spm = (seed != null)
+                ? new SoundPathManager(Long.parseLong(seed))
+                : new SoundPathManager();
         metronome.register(spm);
         platformFactory = new PlatformFactory(this.app, spm);
-        lifecycleManager = new PlatformLifecycleManager(this, new Vector2f(4, 3), new Vector2f(22, 15), new Vector2f(40, 30));
+        lifecycleManager = (seed != null)
+                ? new PlatformLifecycleManager(this, new Vector2f(4, 3), new Vector2f(22, 15), new Vector2f(12, 9), new Vector2f(40, 30), Long.parseLong(seed))
+                : new PlatformLifecycleManager(this, new Vector2f(4, 3), new Vector2f(22, 15), new Vector2f(12, 9), new Vector2f(40, 30));
+        lifecycleManager.setPrefetchSource(characterControl);
         characterControl.addMovementListener(lifecycleManager);
     }
     
@@ -144,14 +181,22 @@ public class IngameState extends AbstractAppState {
     public void update(float tpf){
         super.update(tpf);
         
+        lifecycleManager.update(tpf);
+        physicsMgr.update();
+        
         float beat = metronome.getCurrentBeat();
         
-        for (Platform plat : allPlatforms)
-            plat.update(tpf, beat);
+        long start = FrameProfilerState.begin();
+        platformScheduler.update(tpf, beat);
+        FrameProfilerState.end(FrameProfilerState.PLATFORMS, start);
         
+        start = FrameProfilerState.begin();
         GameThemeController.instance().frame(tpf);
+        FrameProfilerState.end(FrameProfilerState.THEME, start);
         
+        start = FrameProfilerState.begin();
         whiteNoiseFilter.update(tpf);
+        FrameProfilerState.end(FrameProfilerState.NOISE_FILTER, start);
         
         if (whiteNoiseFilter.getIntensity() == -0.5f) bonus.trigger();
     }
@@ -167,6 +212,21 @@ public class IngameState extends AbstractAppState {
     }
     
     
+    public PlatformLifecycleManager getLifecycleManager(){
+        return lifecycleManager;
+    }
+    
+    
+    public PlatformCollisionListener getCollisionListener(){
+        return collisionListener;
+    }
+    
+    
+    public PlatformerCharacterControl getCharacterControl(){
+        return characterControl;
+    }
+    
+    
     public Vector3f getCharacterNodeLocation(){
         return characterNode.getLocalTranslation();
     }
@@ -175,6 +235,8 @@ public class IngameState extends AbstractAppState {
     @Override
     public void cleanup() {
         super.cleanup();
+        lifecycleManager.destroy();
+        platformScheduler.destroy();
         metronome.destroy();
     }
     
@@ -250,19 +312,39 @@ public class IngameState extends AbstractAppState {
     }
     
     
-    public Platform addPlatform(Vector3f pos) {
-        // create new platform
-        Platform p = platformFactory.createPlatform(pos);
-        
+    /**
+     * Builds a new platform without attaching it, may be called from the
+     * zone streaming worker threads
+     */
+    public Platform createPlatform(Vector3f pos, long seed, String samplePath, float[] chord) {
+        return platformFactory.createPlatform(pos, seed, samplePath, chord);
+    }
+    
+    
+    /**
+     * Sample for a platform that is about to be created, has to be called on
+     * the render thread
+     */
+    public String choosePlatformSample(long seed) {
+        return platformFactory.chooseSample(seed);
+    }
+    
+    
+    /**
+     * Hands back a platform from createPlatform() that was never added
+     */
+    public void discardPlatform(Platform p) {
+        platformFactory.recycle(p);
+    }
+    
+    
+    public void addPlatform(Platform p) {
         // register with everything
+        p.linkSound();
         metronome.register(p);
         chordCtrl.register(p);
         sceneNode.attachChild(p.getTopNode());
-        physicsMgr.addToPhysicsScene(p.getPlatformSpatial());
-        
-        allPlatforms.add(p);
-        
-        return p;
+        p.setScheduler(platformScheduler);
     }
     
     public void removePlatform(Platform platform) {
@@ -270,31 +352,51 @@ public class IngameState extends AbstractAppState {
         metronome.unregister(platform);
         chordCtrl.unregister(platform);
         sceneNode.detachChild(platform.getTopNode());
-        physicsMgr.removeFromPhysicsScene(platform.getPlatformSpatial());
-        
-        allPlatforms.remove(platform);
+        platform.setScheduler(null);
+        platformFactory.recycle(platform);
     }
     
     
-    private Collectable createNewCollectable() {
-        switch (random.nextInt(2)) {
-            case 0: return new TemperatureChangePill(app, (Math.random() > 0.5));
-            case 1: return new SpeedChangePill(app, (Math.random() > 0.5));
+    /**
+     * Adds an attached platform to the physics space or takes it out again,
+     * see PlatformLifecycleManager
+     */
+    public void setPlatformResident(Platform p, boolean resident) {
+        if (resident)
+            physicsMgr.addToPhysicsScene(p.getPlatformSpatial(), p.getPlatformSpatial().isMoving());
+        else
+            physicsMgr.removeFromPhysicsScene(p.getPlatformSpatial(), true);
+    }
+    
+    
+    private Collectable createNewCollectable(long seed) {
+        boolean increase = HashRandom.nextBoolean(seed, STREAM_ITEM_INCREASE);
+        float strength = HashRandom.nextFloat(seed, STREAM_ITEM_STRENGTH);
+        
+        switch (HashRandom.nextInt(seed, STREAM_ITEM_TYPE, 2)) {
+            case 0: return new TemperatureChangePill(app, increase, strength);
+            case 1: return new SpeedChangePill(app, increase, strength);
             default: return null;
         }
     }
     
     
-    public Collectable addCollectable(Vector3f position) {
-        Collectable collectable = createNewCollectable();
+    /**
+     * Builds a new collectable whose type and effect are determined by the
+     * seed, without attaching it. May be called from the zone streaming
+     * worker threads.
+     */
+    public Collectable createCollectable(Vector3f position, long seed) {
+        Collectable collectable = createNewCollectable(seed);
         collectable.setLocalTranslation(position);
-        
+        return collectable;
+    }
+    
+    
+    public void addCollectable(Collectable collectable) {
         // register with everything
         metronome.register(collectable);
         sceneNode.attachChild(collectable);
-        physicsMgr.addGhost(collectable);
-        
-        return collectable;
     }
     
     
@@ -305,6 +407,14 @@ public class IngameState extends AbstractAppState {
     }
     
     
+    public void setCollectableResident(Collectable c, boolean resident) {
+        if (resident && !c.isCollected())
+            physicsMgr.addGhost(c);
+        else
+            physicsMgr.removeFromPhysicsScene(c, true);
+    }
+    
+    
     public ChordController getChordController(){
         return chordCtrl;
     }
@@ -3,18 +3,35 @@ package pt.edj.cp.app;
 import com.jme3.app.SimpleApplication;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.renderer.RenderManager;
+import com.jme3.audio.AudioContext;
 import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import java.io.IOException;
+import pt.edj.cp.audio.SilentAudioRenderer;
+import pt.edj.cp.benchmark.BenchmarkState;
+import pt.edj.cp.input.InputScript;
+import pt.edj.cp.timing.FixedStepTimer;
 import pt.edj.cp.util.WhiteNoiseFilter;
 
 
 
 public class Main extends SimpleApplication {
 
+    // only set for benchmark runs
+    private BenchmarkState benchmark;
+
     
     public static void main(String[] args) {
         Main app = new Main();
-        app.setSettings(getSettings());
-        app.start();
+        AppSettings settings = getSettings();
+        app.setSettings(settings);
+        
+        if (settings.getBoolean("Headless")) {
+            app.setShowSettings(false);
+            app.start(JmeContext.Type.Headless);
+        } else {
+            app.start();
+        }
     }
 
     
@@ -32,11 +49,67 @@ public class Main extends SimpleApplication {
         IngameState ingameState = new IngameState(whiteNoise);
         stateManager.attach(ingameState);
         
+        //attach frame profiler
+        if (settings.getBoolean("Profile")) {
+            stateManager.attach(new FrameProfilerState(
+                    settings.getBoolean("ProfileOverlay"),
+                    settings.getString("ProfileCsv"),
+                    10.0f));
+        }
+        
         //disable stats display
         setDisplayStatView(false);
         
         //disable fps display
         //setDisplayFps(false);
+        
+        if (settings.getBoolean("Headless"))
+            initSimulation();
+    }
+    
+    
+    /*
+     * fixed time step, no audio device, scripted input
+     */
+    private void initSimulation() {
+        setTimer(new FixedStepTimer(settings.getFloat("SimTimePerFrame")));
+        audioRenderer = new SilentAudioRenderer();
+        AudioContext.setAudioRenderer(audioRenderer);
+        
+        String scenario = settings.getString("BenchScenario");
+        if (scenario != null) {
+            benchmark = new BenchmarkState(scenario,
+                    settings.getInteger("BenchWarmup"),
+                    settings.getInteger("SimTicks"),
+                    settings.getString("BenchOut"));
+            stateManager.attach(new SimulationState(null, 0));
+            stateManager.attach(benchmark);
+            return;
+        }
+        
+        InputScript script;
+        String scriptPath = settings.getString("SimInput");
+        if (scriptPath != null) {
+            try {
+                script = InputScript.load(scriptPath);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot load input script " + scriptPath, e);
+            }
+        } else {
+            script = InputScript.sprint(1.5f);
+        }
+        
+        stateManager.attach(new SimulationState(script, settings.getInteger("SimTicks")));
+    }
+
+    
+    @Override
+    public void destroy() {
+        super.destroy();
+        
+        // lets the build fail, see build.xml
+        if (benchmark != null && benchmark.hasFailed())
+            System.exit(1);
     }
 
     
@@ -65,6 +138,58 @@ public class Main extends SimpleApplication {
         set.setMinResolution(800, 600);
         set.setResolution(800, 600);
         set.setTitle("a different game.");
+        
+        // -Dcp.parallelPlatforms=true runs the platform pass on a ForkJoinPool
+        set.putBoolean("ParallelPlatforms", Boolean.getBoolean("cp.parallelPlatforms"));
+        
+        // -Dcp.compoundPlatforms=true merges static platforms into one
+        // compound body per cluster of zones
+        set.putBoolean("CompoundPlatforms", Boolean.getBoolean("cp.compoundPlatforms"));
+        
+        // -Dcp.collectableGhosts=true gives every collectable a GhostControl
+        // instead of testing them in a CollectableSensor
+        set.putBoolean("CollectableGhosts", Boolean.getBoolean("cp.collectableGhosts"));
+        
+        // -Dcp.parallelPhysics=true steps the physics on its own thread while
+        // the frame is rendered
+        set.putBoolean("ParallelPhysics", Boolean.getBoolean("cp.parallelPhysics"));
+        
+        // -Dcp.broadphase=dbvt|dbvt-tuned|sweep selects the physics
+        // broadphase, sweep being an AxisSweep3 that follows the player (needs
+        // -XX:+UnlockDiagnosticVMOptions -XX:-BytecodeVerificationRemote)
+        set.putString("Broadphase", System.getProperty("cp.broadphase", "dbvt"));
+        
+        // -Dcp.profile=true times the subsystems of each frame, optionally
+        // with -Dcp.profile.overlay=true and -Dcp.profile.csv=<file>
+        set.putBoolean("Profile", Boolean.getBoolean("cp.profile"));
+        set.putBoolean("ProfileOverlay", Boolean.getBoolean("cp.profile.overlay"));
+        set.putString("ProfileCsv", System.getProperty("cp.profile.csv"));
+        
+        // -Dcp.input.record=<file> saves all key actions as an InputScript
+        set.putString("InputRecording", System.getProperty("cp.input.record"));
+        
+        // -Dcp.headless=true simulates without window and audio, as fast as
+        // possible, with -Dcp.sim.tpf=<s>, -Dcp.sim.ticks=<n> (0 = endless)
+        // and -Dcp.sim.input=<InputScript file> (default: sprint right)
+        boolean headless = Boolean.getBoolean("cp.headless");
+        set.putBoolean("Headless", headless);
+        set.putFloat("SimTimePerFrame", Float.parseFloat(System.getProperty("cp.sim.tpf", "0.016666668")));
+        set.putInteger("SimTicks", Integer.getInteger("cp.sim.ticks", 0));
+        set.putString("SimInput", System.getProperty("cp.sim.input"));
+        set.putString("WorldSeed", System.getProperty("cp.seed"));
+        
+        // -Dcp.bench.scenario=<name> measures a benchmark scenario for
+        // cp.sim.ticks ticks after -Dcp.bench.warmup=<n> ticks and writes the
+        // results to -Dcp.bench.out=<file>, see build.xml
+        set.putString("BenchScenario", System.getProperty("cp.bench.scenario"));
+        set.putInteger("BenchWarmup", Integer.getInteger("cp.bench.warmup", 300));
+        set.putString("BenchOut", System.getProperty("cp.bench.out"));
+        if (headless) {
+            set.setAudioRenderer(null);
+            // the headless context falls back to 60 fps for values <= 0
+            set.setFrameRate(1000000);
+            set.setVSync(false);
+        }
         return set;
     }
 }
@@ -0,0 +1,111 @@
+package pt.edj.cp.app;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import java.util.logging.Logger;
+import pt.edj.cp.input.IngameInputsState;
+import pt.edj.cp.input.InputScript;
+import pt.edj.cp.timing.Metronome;
+
+
+/**
+ * Drives a headless simulation run: replays an input script into the
+ * ingame state, advances the simulated metronome clock with the fixed time
+ * step and reports how many simulation ticks per second the CPU manages.
+ * The application is stopped after the given number of ticks.
+ */
+public class SimulationState extends AbstractAppState {
+
+    private static final Logger logger = Logger.getLogger(SimulationState.class.getName());
+
+    private static final long REPORT_INTERVAL_NS = 5000000000L;     // 5 s
+
+    private Application app;
+    private InputScript script;
+    private long maxTicks;
+
+    private IngameInputsState inputs;
+    private float simTime = 0.0f;
+    private long ticks = 0;
+
+    private long startNanos;
+    private long lastReportNanos;
+    private long lastReportTicks = 0;
+
+
+    /**
+     * @param maxTicks  ticks after which the application stops, 0 runs forever
+     */
+    public SimulationState(InputScript script, long maxTicks) {
+        this.script = script;
+        this.maxTicks = maxTicks;
+    }
+
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        this.app = app;
+
+        Metronome.getInstance().useSimulatedClock();
+
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+    }
+
+
+    @Override
+    public void update(float tpf) {
+        // the input state is attached by the ingame state during its first
+        // frame and initialized one frame later
+        if (inputs == null) {
+            IngameInputsState state = app.getStateManager().getState(IngameInputsState.class);
+            if (state != null && state.isInitialized())
+                inputs = state;
+        }
+
+        simTime += tpf;
+        Metronome.getInstance().advance(tpf);
+
+        if (inputs != null && script != null)
+            script.replay(simTime, inputs);
+
+        ticks++;
+
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= REPORT_INTERVAL_NS) {
+            IngameState ingame = app.getStateManager().getState(IngameState.class);
+            logger.info(String.format("%d ticks, %.1f sim s, %.0f ticks/s, character at %s",
+                    ticks, simTime, (ticks - lastReportTicks) * 1.0e9 / (now - lastReportNanos),
+                    ingame.getCharacterNodeLocation()));
+            lastReportNanos = now;
+            lastReportTicks = ticks;
+        }
+
+        if (maxTicks > 0 && ticks >= maxTicks) {
+            IngameState ingame = app.getStateManager().getState(IngameState.class);
+            logger.info(String.format("Simulation done: %d ticks, %.1f sim s, %.0f ticks/s average, character at %s",
+                    ticks, simTime, getTicksPerSecond(), ingame.getCharacterNodeLocation()));
+            app.stop();
+            maxTicks = 0;
+        }
+    }
+
+
+    public long getTicks() {
+        return ticks;
+    }
+
+
+    public float getSimulatedTime() {
+        return simTime;
+    }
+
+
+    public double getTicksPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return (elapsed > 0) ? ticks * 1.0e9 / elapsed : 0.0;
+    }
+
+}
@@ -5,6 +5,7 @@ import com.jme3.app.SimpleApplication;
 import com.jme3.audio.AudioNode;
 import com.jme3.audio.AudioSource.Status;
 import java.util.concurrent.Callable;
+import pt.edj.cp.app.FrameProfilerState;
 import pt.edj.cp.app.IngameState;
 import pt.edj.cp.timing.events.ChordChangeEvent;
 import pt.edj.cp.timing.events.IEvent;
@@ -156,7 +157,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> playAmbient = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             amb.play();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -164,7 +167,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> stopAmbient = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             amb.stop();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -172,7 +177,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> playPad = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             pad.play();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -180,7 +187,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> stopPad = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             pad.stop();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -188,7 +197,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> setPadPitch = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             pad.setPitch(pitches[Randoms.rndInt(0, pitches.length)]);
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -196,7 +207,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> playNoise = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             noise.play();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -204,7 +217,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> stopNoise = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             noise.stop();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
@@ -212,7 +227,9 @@ public class BackgroundSoundsPlayer implements IEventListener{
     
     private Callable<Boolean> setNoise = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             noise.setVolume(noiseVol);
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
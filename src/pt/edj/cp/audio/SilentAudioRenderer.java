@@ -0,0 +1,68 @@
+package pt.edj.cp.audio;
+
+import com.jme3.audio.AudioData;
+import com.jme3.audio.AudioParam;
+import com.jme3.audio.AudioRenderer;
+import com.jme3.audio.AudioSource;
+import com.jme3.audio.Environment;
+import com.jme3.audio.Filter;
+import com.jme3.audio.Listener;
+import com.jme3.audio.ListenerParam;
+
+
+/**
+ * Accepts and drops all audio calls, for runs without an audio device. The
+ * game code still goes through all of its audio paths.
+ */
+public class SilentAudioRenderer implements AudioRenderer {
+
+    public void setListener(Listener listener) {
+    }
+
+    public void setEnvironment(Environment env) {
+    }
+
+    public void playSourceInstance(AudioSource src) {
+    }
+
+    public void playSource(AudioSource src) {
+    }
+
+    public void pauseSource(AudioSource src) {
+    }
+
+    public void stopSource(AudioSource src) {
+    }
+
+    public void updateSourceParam(AudioSource src, AudioParam param) {
+    }
+
+    public void updateListenerParam(Listener listener, ListenerParam param) {
+    }
+
+    public float getSourcePlaybackTime(AudioSource src) {
+        return 0.0f;
+    }
+
+    public void deleteFilter(Filter filter) {
+    }
+
+    public void deleteAudioData(AudioData ad) {
+    }
+
+    public void initialize() {
+    }
+
+    public void update(float tpf) {
+    }
+
+    public void pauseAll() {
+    }
+
+    public void resumeAll() {
+    }
+
+    public void cleanup() {
+    }
+
+}
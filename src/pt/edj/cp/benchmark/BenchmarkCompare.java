@@ -0,0 +1,106 @@
+package pt.edj.cp.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+
+/**
+ * Compares the results of BenchmarkState runs against a stored baseline.
+ *
+ * Usage: BenchmarkCompare <baseline dir> <results dir> <tolerances file>
+ *
+ * Both directories hold one <scenario>.properties file per scenario. The
+ * tolerances file maps metric names to the allowed relative increase over
+ * the baseline (0.2 = 20 % worse), "default" applies to all other metrics.
+ * All metrics are lower-is-better. Where the baseline is 0, the tolerance
+ * is taken as the allowed absolute value instead. Exits with status 1 if any
+ * metric regressed, 2 if there is no baseline yet.
+ */
+public class BenchmarkCompare {
+
+    private static final String[] METRICS = {
+        "cpu_ms_mean", "cpu_ms_p95", "cpu_ms_p99",
+        "alloc_kb_per_frame", "alloc_mb_all_threads", "zone_churn_per_s",
+        "contact_events_per_tick", "physics_objects_max"
+    };
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: BenchmarkCompare <baseline dir> <results dir> <tolerances file>");
+            System.exit(2);
+        }
+
+        File baselineDir = new File(args[0]);
+        File resultsDir = new File(args[1]);
+        Properties tolerances = load(new File(args[2]));
+        float defaultTolerance = Float.parseFloat(tolerances.getProperty("default", "0.2"));
+
+        File[] files = resultsDir.listFiles();
+        if (files == null || files.length == 0) {
+            System.err.println("No benchmark results in " + resultsDir);
+            System.exit(2);
+        }
+        Arrays.sort(files);
+
+        boolean regressed = false;
+        boolean missingBaseline = false;
+
+        for (File resultFile : files) {
+            if (!resultFile.getName().endsWith(".properties"))
+                continue;
+
+            String scenario = resultFile.getName().replace(".properties", "");
+            File baselineFile = new File(baselineDir, resultFile.getName());
+            if (!baselineFile.exists()) {
+                System.out.println(scenario + ": no baseline, run the benchmark-baseline target");
+                missingBaseline = true;
+                continue;
+            }
+
+            Properties result = load(resultFile);
+            Properties baseline = load(baselineFile);
+
+            System.out.println(scenario + ":");
+            for (String metric : METRICS) {
+                if (result.getProperty(metric) == null || baseline.getProperty(metric) == null)
+                    continue;
+
+                double now = Double.parseDouble(result.getProperty(metric));
+                double base = Double.parseDouble(baseline.getProperty(metric));
+                double tolerance = Double.parseDouble(tolerances.getProperty(metric, Float.toString(defaultTolerance)));
+                double limit = (base != 0.0) ? base * (1.0 + tolerance) : tolerance;
+
+                boolean bad = now > limit;
+                regressed |= bad;
+
+                System.out.println(String.format(Locale.US, "  %-22s %12.4f  baseline %12.4f  %+7.1f %%  %s",
+                        metric, now, base, (base != 0.0) ? 100.0 * (now - base) / base : 0.0,
+                        bad ? "REGRESSION" : "ok"));
+            }
+        }
+
+        if (regressed)
+            System.exit(1);
+        if (missingBaseline)
+            System.exit(2);
+    }
+
+
+    private static Properties load(File file) throws IOException {
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        return p;
+    }
+
+}
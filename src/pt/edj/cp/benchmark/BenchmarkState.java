@@ -0,0 +1,336 @@
+package pt.edj.cp.benchmark;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import pt.edj.cp.app.IngameState;
+import pt.edj.cp.physics.PlatformerCharacterControl;
+import pt.edj.cp.timing.GameThemeController;
+import pt.edj.cp.world.PlatformLifecycleManager;
+import pt.edj.cp.world.platforms.PlatformCollisionListener;
+
+
+/**
+ * Measures one benchmark scenario of a headless simulation run (see
+ * SimulationState) and writes the results as a properties file, which
+ * BenchmarkCompare checks against a baseline.
+ *
+ * After a warm-up, the CPU time and the allocated bytes of the render thread
+ * are recorded per frame, plus the allocations of all threads, the zone
+ * churn of the lifecycle manager and the collision events per physics tick
+ * over the whole measurement.
+ *
+ * The character is not steered through the inputs but moved along a fixed
+ * path, see PlatformerCharacterControl.drive(), so every run crosses the
+ * same zones whatever the platforms do to it. It still collides with them.
+ * A run that falls short of the distance or zone churn its path should give
+ * is reported as failed and writes no results.
+ *
+ * Scenarios:
+ *   sprint     right at running speed, in waves of two zones height
+ *   climb      upwards, swinging left and right by two zones
+ *   collect    sprint while Speed is raised as if a speed pill was collected
+ *              every two seconds, until it is maxed out
+ */
+public class BenchmarkState extends AbstractAppState {
+
+    private static final Logger logger = Logger.getLogger(BenchmarkState.class.getName());
+
+    private static final float PILL_INTERVAL = 2.0f;
+    private static final float PILL_DELTA = 0.45f;      // mean of SpeedChangePill
+
+    // paths, zones are 4 x 3
+    private static final float SPRINT_SPEED = 5.0f;     // WorldPhysicsManager.PLAYER_SPEED
+    private static final float SPRINT_WAVE = 3.0f;
+    private static final float SPRINT_PERIOD = 4.0f;
+    private static final float CLIMB_SPEED = 2.0f;
+    private static final float CLIMB_SWING = 8.0f;
+    private static final float CLIMB_PERIOD = 4.0f;
+
+    // share of the path's distance a run has to cover
+    private static final float MIN_DISTANCE = 0.9f;
+    private static final float MIN_ZONE_CHURN_PER_S = 5.0f;
+
+
+    private final String scenario;
+    private final int warmupTicks;
+    private final int measureTicks;
+    private final String outPath;
+
+    private final boolean climb;
+
+    private Application app;
+    private PlatformerCharacterControl character;
+    private Vector3f pathStart;
+    private Vector3f pathPosition = new Vector3f();
+    private Vector3f pathVelocity = new Vector3f();
+    private float pathTime = 0.0f;
+    private boolean failed = false;
+    private ThreadMXBean threads;
+    private com.sun.management.ThreadMXBean allocations;
+    private long renderThreadId;
+
+    private int ticks = 0;
+    private int measured = 0;
+    private long[] cpuNanos;
+    private long[] allocBytes;
+    private long lastCpu;
+    private long lastAlloc;
+    // per thread, threads started later count from zero
+    private HashMap<Long,Long> startAllThreads = new HashMap<Long,Long>();
+
+    private float simTime = 0.0f;
+    private float measureStartTime;
+    private float measureStartPath;
+    private Vector3f measureStartPosition = new Vector3f();
+    private float nextPill = PILL_INTERVAL;
+    private long startZones;
+    private long startEvents;
+    private long startPhysicsTicks;
+    private int maxPhysicsObjects = 0;
+
+
+    public BenchmarkState(String scenario, int warmupTicks, int measureTicks, String outPath) {
+        if (!scenario.equals("sprint") && !scenario.equals("climb") && !scenario.equals("collect"))
+            throw new IllegalArgumentException("Unknown benchmark scenario " + scenario);
+
+        this.scenario = scenario;
+        this.climb = scenario.equals("climb");
+        this.warmupTicks = warmupTicks;
+        this.measureTicks = measureTicks;
+        this.outPath = outPath;
+        this.cpuNanos = new long[measureTicks];
+        this.allocBytes = new long[measureTicks];
+    }
+
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        this.app = app;
+
+        threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            allocations = (com.sun.management.ThreadMXBean) threads;
+        renderThreadId = Thread.currentThread().getId();
+    }
+
+
+    @Override
+    public void update(float tpf) {
+        simTime += tpf;
+        drive(tpf);
+
+        if (scenario.equals("collect") && simTime >= nextPill) {
+            nextPill += PILL_INTERVAL;
+            GameThemeController.instance().changeParameter("Speed", PILL_DELTA);
+        }
+    }
+
+
+    // starts once the ingame state is up, from where the character was put
+    private void drive(float tpf) {
+        if (character == null) {
+            IngameState ingame = app.getStateManager().getState(IngameState.class);
+            if (ingame == null || !ingame.isInitialized())
+                return;
+            character = ingame.getCharacterControl();
+            pathStart = ingame.getCharacterNodeLocation().clone();
+        } else {
+            pathTime += tpf;
+        }
+
+        pathAt(pathTime, pathPosition, pathVelocity);
+        character.drive(pathPosition.addLocal(pathStart), pathVelocity);
+    }
+
+
+    /**
+     * Offset from the start of the path after t seconds, and the velocity
+     */
+    private void pathAt(float t, Vector3f position, Vector3f velocity) {
+        if (climb) {
+            float w = FastMath.TWO_PI / CLIMB_PERIOD;
+            position.set(0.5f * CLIMB_SWING * FastMath.sin(w * t), CLIMB_SPEED * t, 0);
+            velocity.set(0.5f * CLIMB_SWING * w * FastMath.cos(w * t), CLIMB_SPEED, 0);
+        } else {
+            float w = FastMath.TWO_PI / SPRINT_PERIOD;
+            position.set(SPRINT_SPEED * t, 0.5f * SPRINT_WAVE * FastMath.sin(w * t), 0);
+            velocity.set(SPRINT_SPEED, 0.5f * SPRINT_WAVE * w * FastMath.cos(w * t), 0);
+        }
+    }
+
+
+    /**
+     * Net distance the path covers from t1 to t2
+     */
+    private float pathDistance(float t1, float t2) {
+        Vector3f a = new Vector3f();
+        Vector3f b = new Vector3f();
+        Vector3f velocity = new Vector3f();
+        pathAt(t1, a, velocity);
+        pathAt(t2, b, velocity);
+        return a.distance(b);
+    }
+
+
+    @Override
+    public void postRender() {
+        long cpu = threads.getCurrentThreadCpuTime();
+        long alloc = (allocations != null) ? allocations.getThreadAllocatedBytes(renderThreadId) : 0L;
+
+        ticks++;
+        if (ticks == warmupTicks) {
+            measureStartTime = simTime;
+            measureStartPath = pathTime;
+            measureStartPosition.set(getCharacterLocation());
+            startZones = getZoneChurn();
+            startAllThreads.clear();
+            if (allocations != null) {
+                long[] ids = threads.getAllThreadIds();
+                long[] bytes = allocations.getThreadAllocatedBytes(ids);
+                for (int i = 0; i < ids.length; i++)
+                    startAllThreads.put(ids[i], bytes[i]);
+            }
+            startEvents = getCollisionListener().getEventCount();
+            startPhysicsTicks = getCollisionListener().getTickCount();
+        } else if (ticks > warmupTicks && measured < measureTicks) {
+            cpuNanos[measured] = cpu - lastCpu;
+            allocBytes[measured] = alloc - lastAlloc;
+            maxPhysicsObjects = Math.max(maxPhysicsObjects, getPhysicsObjects());
+            measured++;
+
+            if (measured == measureTicks) {
+                writeResults();
+                app.stop();
+            }
+        }
+
+        lastCpu = cpu;
+        lastAlloc = alloc;
+    }
+
+
+    /**
+     * True if the run fell short of its path, see writeResults()
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+
+    private Vector3f getCharacterLocation() {
+        return app.getStateManager().getState(IngameState.class).getCharacterNodeLocation();
+    }
+
+
+    private PlatformCollisionListener getCollisionListener() {
+        return app.getStateManager().getState(IngameState.class).getCollisionListener();
+    }
+
+
+    private int getPhysicsObjects() {
+        BulletAppState bullet = app.getStateManager().getState(BulletAppState.class);
+        return bullet.getPhysicsSpace().getDynamicsWorld().getNumCollisionObjects();
+    }
+
+
+    private long getZoneChurn() {
+        IngameState ingame = app.getStateManager().getState(IngameState.class);
+        PlatformLifecycleManager plm = ingame.getLifecycleManager();
+        return plm.getZonesEntered() + plm.getZonesLeft();
+    }
+
+
+    /**
+     * Bytes allocated by all live threads since the warm-up. Worker pools
+     * start their threads on demand, so the threads are matched by id.
+     */
+    private long getAllocatedByAllThreadsSinceStart() {
+        if (allocations == null)
+            return 0L;
+
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = allocations.getThreadAllocatedBytes(ids);
+        long sum = 0L;
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] <= 0)
+                continue;
+            Long start = startAllThreads.get(ids[i]);
+            sum += bytes[i] - ((start != null && start > 0) ? start : 0L);
+        }
+        return sum;
+    }
+
+
+    private void writeResults() {
+        float seconds = simTime - measureStartTime;
+
+        float distance = getCharacterLocation().distance(measureStartPosition);
+        float expected = pathDistance(measureStartPath, pathTime);
+        float churn = (getZoneChurn() - startZones) / seconds;
+        if (distance < MIN_DISTANCE * expected || churn < MIN_ZONE_CHURN_PER_S) {
+            logger.severe(String.format(Locale.US,
+                    "Benchmark %s failed: the character moved %.1f of %.1f units, zone churn %.1f/s",
+                    scenario, distance, expected, churn));
+            failed = true;
+            return;
+        }
+
+        long totalCpu = 0L;
+        long totalAlloc = 0L;
+        for (int i = 0; i < measured; i++) {
+            totalCpu += cpuNanos[i];
+            totalAlloc += allocBytes[i];
+        }
+
+        long[] sorted = cpuNanos.clone();
+        Arrays.sort(sorted, 0, measured);
+
+        Properties results = new Properties();
+        results.setProperty("frames", Integer.toString(measured));
+        results.setProperty("cpu_ms_mean", format(totalCpu / 1.0e6 / measured));
+        results.setProperty("cpu_ms_p95", format(sorted[(int) (0.95 * (measured - 1))] / 1.0e6));
+        results.setProperty("cpu_ms_p99", format(sorted[(int) (0.99 * (measured - 1))] / 1.0e6));
+        results.setProperty("alloc_kb_per_frame", format(totalAlloc / 1024.0 / measured));
+        results.setProperty("alloc_mb_all_threads", format(getAllocatedByAllThreadsSinceStart() / 1048576.0));
+        results.setProperty("zone_churn_per_s", format(churn));
+        long physicsTicks = getCollisionListener().getTickCount() - startPhysicsTicks;
+        results.setProperty("contact_events_per_tick", format(physicsTicks > 0
+                ? (double) (getCollisionListener().getEventCount() - startEvents) / physicsTicks : 0.0));
+        results.setProperty("physics_objects_max", Integer.toString(maxPhysicsObjects));
+
+        try {
+            OutputStream out = new FileOutputStream(outPath);
+            try {
+                results.store(out, "benchmark scenario " + scenario);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Cannot write benchmark results to " + outPath, e);
+        }
+
+        logger.info("Benchmark " + scenario + ": " + results);
+    }
+
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.4f", value);
+    }
+
+}
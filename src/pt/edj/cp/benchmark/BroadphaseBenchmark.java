@@ -0,0 +1,203 @@
+package pt.edj.cp.benchmark;
+
+import com.bulletphysics.collision.broadphase.BroadphaseInterface;
+import com.bulletphysics.collision.broadphase.BroadphaseNativeType;
+import com.bulletphysics.collision.broadphase.BroadphaseProxy;
+import com.bulletphysics.collision.broadphase.Dispatcher;
+import com.bulletphysics.collision.broadphase.OverlappingPairCache;
+import com.bulletphysics.dynamics.DynamicsWorld;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import pt.edj.cp.physics.RecenteringBroadphase;
+import pt.edj.cp.physics.WorldPhysicsManager;
+
+
+/**
+ * Pair-finding cost of the broadphase modes of WorldPhysicsManager for a
+ * field of live static platforms, laid out like in PhysicsBenchmark, with a
+ * few dynamic spheres bouncing on top.
+ *
+ * Usage: BroadphaseBenchmark [platform counts...], default 100 1000 10000
+ *
+ * The sweep mode needs the JVM options of RecenteringBroadphase, see
+ * build.xml, and is skipped without them.
+ *
+ * For each mode the whole step and the pair-finding part of it are reported
+ * in microseconds per tick. Pair finding is the time spent in the
+ * broadphase itself, measured by wrapping it: AABB updates of moving
+ * objects, which already add and remove pairs in a sweep, and the
+ * overlapping pair pass. The jbullet profiler can not be used for this, its
+ * sections are not balanced.
+ */
+public class BroadphaseBenchmark {
+
+    private static final float TPF = 1.0f / 60.0f;
+    private static final int WARMUP_TICKS = 200;
+    private static final int TICKS = 1000;
+    private static final int SPHERES = 16;
+    private static final Vector3f HALF_EXTENTS = new Vector3f(1.0f, 0.25f, 0.5f);
+
+    private static final String[] MODES = { "dbvt", "dbvt-tuned", "sweep" };
+
+
+    /**
+     * Forwards to the real broadphase and times everything that finds pairs
+     */
+    private static class TimedBroadphase extends BroadphaseInterface {
+        private final BroadphaseInterface bp;
+        private long nanos = 0L;
+
+        public TimedBroadphase(BroadphaseInterface bp) {
+            this.bp = bp;
+        }
+
+        public BroadphaseProxy createProxy(javax.vecmath.Vector3f aabbMin, javax.vecmath.Vector3f aabbMax,
+                BroadphaseNativeType shapeType, Object userPtr, short collisionFilterGroup,
+                short collisionFilterMask, Dispatcher dispatcher, Object multiSapProxy) {
+            return bp.createProxy(aabbMin, aabbMax, shapeType, userPtr, collisionFilterGroup,
+                    collisionFilterMask, dispatcher, multiSapProxy);
+        }
+
+        public void destroyProxy(BroadphaseProxy proxy, Dispatcher dispatcher) {
+            bp.destroyProxy(proxy, dispatcher);
+        }
+
+        public void setAabb(BroadphaseProxy proxy, javax.vecmath.Vector3f aabbMin, javax.vecmath.Vector3f aabbMax,
+                Dispatcher dispatcher) {
+            long start = System.nanoTime();
+            bp.setAabb(proxy, aabbMin, aabbMax, dispatcher);
+            nanos += System.nanoTime() - start;
+        }
+
+        public void calculateOverlappingPairs(Dispatcher dispatcher) {
+            long start = System.nanoTime();
+            bp.calculateOverlappingPairs(dispatcher);
+            nanos += System.nanoTime() - start;
+        }
+
+        public OverlappingPairCache getOverlappingPairCache() {
+            return bp.getOverlappingPairCache();
+        }
+
+        public void getBroadphaseAabb(javax.vecmath.Vector3f aabbMin, javax.vecmath.Vector3f aabbMax) {
+            bp.getBroadphaseAabb(aabbMin, aabbMax);
+        }
+
+        public void printStats() {
+            bp.printStats();
+        }
+    }
+
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        int[] counts = { 100, 1000, 10000 };
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println(String.format(Locale.US, "%10s %12s %12s %12s %8s",
+                "platforms", "mode", "step us", "pairs us", "pairs"));
+        for (int count : counts) {
+            for (String mode : MODES) {
+                double[] r;
+                try {
+                    r = measure(count, mode);
+                } catch (VerifyError e) {
+                    System.out.println(String.format(Locale.US, "%10d %12s %12s", count, mode, "n/a"));
+                    continue;
+                }
+                System.out.println(String.format(Locale.US, "%10d %12s %12.1f %12.1f %8d",
+                        count, mode, r[0], r[1], (int) r[2]));
+            }
+        }
+    }
+
+
+    /**
+     * Returns the mean microseconds per tick of the step and of pair
+     * finding, and the overlapping pairs after the last tick
+     */
+    private static double[] measure(int count, String mode) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        Vector3f center = new Vector3f(2.0f * columns, 1.5f * rows, 0);
+
+        PhysicsSpace space = new PhysicsSpace(new Vector3f(-10000, -10000, -1000),
+                new Vector3f(10000, 10000, 1000), PhysicsSpace.BroadphaseType.DBVT);
+        space.setGravity(new Vector3f(0, -9.81f, 0));
+
+        Node root = new Node("root");
+
+        for (int i = 0; i < count; i++) {
+            Node platform = new Node("platform" + i);
+            platform.setLocalTranslation(4.0f * (i % columns), 3.0f * (i / columns), 0);
+            root.attachChild(platform);
+
+            RigidBodyControl body = new RigidBodyControl(new BoxCollisionShape(HALF_EXTENTS), 0);
+            platform.addControl(body);
+            body.setFriction(1f);
+            space.add(body);
+        }
+
+        for (int i = 0; i < SPHERES; i++) {
+            Node ball = new Node("ball" + i);
+            ball.setLocalTranslation(4.0f * (i % columns) + 0.5f, 3.0f * (rows - 1) + 2.0f, 0);
+            root.attachChild(ball);
+
+            RigidBodyControl body = new RigidBodyControl(new SphereCollisionShape(0.3f), 1);
+            ball.addControl(body);
+            body.setRestitution(0.8f);
+            space.add(body);
+        }
+
+        // same settings as IngameState, the sweep just has to cover the field
+        if (mode.equals("dbvt-tuned")) {
+            WorldPhysicsManager.tuneDbvt(space, 4f, 0, 2);
+        } else if (mode.equals("sweep")) {
+            Vector3f halfExtents = center.add(8, 8, 16);
+            new RecenteringBroadphase(space, center, halfExtents, halfExtents, 16384);
+        }
+
+        // the proxies stay with the wrapped broadphase
+        DynamicsWorld world = space.getDynamicsWorld();
+        TimedBroadphase timed = new TimedBroadphase(world.getBroadphase());
+        world.setBroadphase(timed);
+
+        root.updateGeometricState();
+
+        long total = 0L;
+        long pairNanos = 0L;
+        for (int t = 0; t < WARMUP_TICKS + TICKS; t++) {
+            if (t == WARMUP_TICKS)
+                pairNanos = -timed.nanos;
+
+            long start = System.nanoTime();
+            root.updateLogicalState(TPF);
+            root.updateGeometricState();
+            space.update(TPF);
+            space.distributeEvents();
+            if (t >= WARMUP_TICKS)
+                total += System.nanoTime() - start;
+        }
+
+        pairNanos += timed.nanos;
+
+        int pairs = timed.getOverlappingPairCache().getNumOverlappingPairs();
+
+        space.destroy();
+        return new double[] { total / 1000.0 / TICKS, pairNanos / 1000.0 / TICKS, pairs };
+    }
+
+
+}
@@ -0,0 +1,166 @@
+package pt.edj.cp.benchmark;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.CapsuleCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.control.GhostControl;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import pt.edj.cp.physics.CollectableSensor;
+import pt.edj.cp.physics.CollisionShapeCache;
+import pt.edj.cp.physics.ICharacterContactHandler;
+import pt.edj.cp.physics.ICollisionShapeProvider;
+import pt.edj.cp.physics.WorldPhysicsManager;
+import pt.edj.cp.world.platforms.PlatformCollisionListener;
+
+
+/**
+ * Per-tick cost of finding the collectables the character touches, with a
+ * GhostControl per item and with a CollectableSensor, at high item density.
+ * The items sit on a grid with 1 m spacing and the character sweeps
+ * through them row by row, so there are contacts all the time.
+ *
+ * Usage: CollectableBenchmark [item counts...], default 1000 5000 20000
+ *
+ * A tick covers the control updates of the scene graph, the physics step,
+ * the collision events and, for the sensor, its update().
+ */
+public class CollectableBenchmark {
+
+    private static final float TPF = 1.0f / 60.0f;
+    private static final int WARMUP_TICKS = 200;
+    private static final int TICKS = 2000;
+    private static final float SPACING = 1.0f;
+    private static final float ITEM_RADIUS = 0.25f;
+    private static final float CHARACTER_RADIUS = 0.3f;
+    private static final float CHARACTER_HEIGHT = 1.0f;
+    private static final float SPEED = 5.0f;
+
+
+    /**
+     * Collectable without effect, counts how often it was collected
+     */
+    private static class Item extends Node implements ICollisionShapeProvider, ICharacterContactHandler {
+        private static int collected = 0;
+        private boolean done = false;
+
+        public Item(String name) {
+            super(name);
+        }
+
+        public CollisionShape getCollisionShape() {
+            return CollisionShapeCache.getSphere(ITEM_RADIUS);
+        }
+
+        public void characterContact() {
+            if (done)
+                return;
+            done = true;
+            collected++;
+
+            GhostControl ghost = getControl(GhostControl.class);
+            if (ghost != null)
+                ghost.setEnabled(false);
+        }
+    }
+
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        int[] counts = { 1000, 5000, 20000 };
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println(String.format(Locale.US, "%10s %12s %10s %12s %10s",
+                "items", "ghost us", "collected", "sensor us", "collected"));
+        for (int count : counts) {
+            double ghosts = measure(count, false);
+            int ghostsCollected = Item.collected;
+            double sensor = measure(count, true);
+            System.out.println(String.format(Locale.US, "%10d %12.1f %10d %12.1f %10d",
+                    count, ghosts, ghostsCollected, sensor, Item.collected));
+        }
+    }
+
+
+    /**
+     * Returns the mean microseconds per tick
+     */
+    private static double measure(int count, boolean useSensor) {
+        PhysicsSpace space = new PhysicsSpace(new Vector3f(-10000, -10000, -1000),
+                new Vector3f(10000, 10000, 1000), PhysicsSpace.BroadphaseType.DBVT);
+        PlatformCollisionListener listener = new PlatformCollisionListener();
+        space.addCollisionListener(listener);
+
+        Node root = new Node("root");
+        CollectableSensor sensor = useSensor
+                ? new CollectableSensor(SPACING, CHARACTER_RADIUS, CHARACTER_HEIGHT) : null;
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        float width = columns * SPACING;
+
+        for (int i = 0; i < count; i++) {
+            Item item = new Item("item" + i);
+            item.setLocalTranslation(SPACING * (i % columns), SPACING * (i / columns), 0);
+            root.attachChild(item);
+
+            if (sensor != null) {
+                sensor.add(item, item.getLocalTranslation(), ITEM_RADIUS);
+                continue;
+            }
+
+            // like WorldPhysicsManager.addGhost()
+            GhostControl ghost = new GhostControl(item.getCollisionShape());
+            ghost.setCollisionGroup(WorldPhysicsManager.GROUP_COLLECTABLE);
+            ghost.setCollideWithGroups(WorldPhysicsManager.GROUP_CHARACTER);
+            item.addControl(ghost);
+            space.add(ghost);
+        }
+
+        // dynamic like the real one, but moved by hand; the capsule is
+        // centred on the body, the sensor wants the feet
+        PhysicsRigidBody character = new PhysicsRigidBody(new CapsuleCollisionShape(CHARACTER_RADIUS,
+                CHARACTER_HEIGHT - 2 * CHARACTER_RADIUS), 1);
+        character.setGravity(Vector3f.ZERO);
+        character.setCollisionGroup(WorldPhysicsManager.GROUP_CHARACTER);
+        character.setCollideWithGroups(WorldPhysicsManager.GROUP_COLLECTABLE);
+        space.add(character);
+        Vector3f center = new Vector3f();
+        Vector3f feet = new Vector3f();
+
+        root.updateGeometricState();
+        Item.collected = 0;
+
+        long total = 0L;
+        for (int t = 0; t < WARMUP_TICKS + TICKS; t++) {
+            // row by row, two rows up per lap
+            float distance = SPEED * TPF * t;
+            int lap = (int) (distance / width);
+            center.set(distance - lap * width, SPACING * ((2 * lap) % rows) + 0.1f, 0);
+            feet.set(center.x, center.y - 0.5f * CHARACTER_HEIGHT, center.z);
+            character.setPhysicsLocation(center);
+
+            long start = System.nanoTime();
+            root.updateLogicalState(TPF);
+            root.updateGeometricState();
+            space.update(TPF);
+            space.distributeEvents();
+            if (sensor != null)
+                sensor.update(feet);
+            if (t >= WARMUP_TICKS)
+                total += System.nanoTime() - start;
+        }
+
+        space.destroy();
+        return total / 1000.0 / TICKS;
+    }
+
+}
@@ -0,0 +1,144 @@
+package pt.edj.cp.benchmark;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import pt.edj.cp.physics.CompoundPlatformBodies;
+import pt.edj.cp.physics.ICollisionShapeProvider;
+
+
+/**
+ * Per-tick cost of the physics space for a field of platforms, without the
+ * rest of the game. The platforms are laid out like the zone grid of
+ * PlatformLifecycleManager and a few dynamic spheres bounce around on them,
+ * so there are broadphase pairs and contacts.
+ *
+ * Usage: PhysicsBenchmark [platform counts...], default 100 500 1000
+ *
+ * Each count is measured with kinematic platforms that follow their spatial
+ * (the old path), with static platforms, and with static platforms merged
+ * into compound bodies per cluster of 4x4 zones. A tick covers the control
+ * updates of the scene graph and the physics step.
+ */
+public class PhysicsBenchmark {
+
+    private static final float TPF = 1.0f / 60.0f;
+    private static final int WARMUP_TICKS = 200;
+    private static final int TICKS = 1000;
+    private static final int SPHERES = 8;
+    private static final Vector3f HALF_EXTENTS = new Vector3f(1.0f, 0.25f, 0.5f);
+
+    private static final int KINEMATIC = 0;
+    private static final int STATIC = 1;
+    private static final int COMPOUND = 2;
+
+
+    /**
+     * Platform with a box shape, like TriangleSpikesPlatform
+     */
+    private static class BoxPlatformNode extends Node implements ICollisionShapeProvider {
+        public BoxPlatformNode(String name) {
+            super(name);
+            attachChild(new Geometry("box", new Box(HALF_EXTENTS.x, HALF_EXTENTS.y, HALF_EXTENTS.z)));
+        }
+
+        public CollisionShape getCollisionShape() {
+            return new BoxCollisionShape(HALF_EXTENTS);
+        }
+    }
+
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        int[] counts = { 100, 500, 1000 };
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println(String.format(Locale.US, "%10s %14s %14s %14s",
+                "platforms", "kinematic us", "static us", "compound us"));
+        for (int count : counts) {
+            double kinematic = measure(count, KINEMATIC);
+            double fixed = measure(count, STATIC);
+            double compound = measure(count, COMPOUND);
+            System.out.println(String.format(Locale.US, "%10d %14.1f %14.1f %14.1f",
+                    count, kinematic, fixed, compound));
+        }
+    }
+
+
+    /**
+     * Returns the mean microseconds per tick
+     */
+    private static double measure(int count, int mode) {
+        PhysicsSpace space = new PhysicsSpace(new Vector3f(-10000, -10000, -1000),
+                new Vector3f(10000, 10000, 1000), PhysicsSpace.BroadphaseType.DBVT);
+        space.setGravity(new Vector3f(0, -9.81f, 0));
+
+        Node root = new Node("root");
+        CompoundPlatformBodies clusters = (mode == COMPOUND)
+                ? new CompoundPlatformBodies(space, new Vector2f(16, 12)) : null;
+        int columns = (int) Math.ceil(Math.sqrt(count));
+
+        for (int i = 0; i < count; i++) {
+            Node platform = new BoxPlatformNode("platform" + i);
+            platform.setLocalTranslation(4.0f * (i % columns), 3.0f * (i / columns), 0);
+            root.attachChild(platform);
+
+            if (clusters != null) {
+                clusters.add(platform);
+                continue;
+            }
+
+            RigidBodyControl body = new RigidBodyControl(new BoxCollisionShape(HALF_EXTENTS), 0);
+            platform.addControl(body);
+            body.setKinematic(mode == KINEMATIC);
+            body.setKinematicSpatial(mode == KINEMATIC);
+            body.setFriction(1f);
+            space.add(body);
+        }
+        if (clusters != null)
+            clusters.update();
+
+        for (int i = 0; i < SPHERES; i++) {
+            Node ball = new Node("ball" + i);
+            ball.setLocalTranslation(4.0f * (i % columns) + 0.5f, 3.0f * (columns - 1) + 2.0f, 0);
+            root.attachChild(ball);
+
+            RigidBodyControl body = new RigidBodyControl(new SphereCollisionShape(0.3f), 1);
+            ball.addControl(body);
+            body.setRestitution(0.8f);
+            space.add(body);
+        }
+
+        root.updateGeometricState();
+
+        long total = 0L;
+        for (int t = 0; t < WARMUP_TICKS + TICKS; t++) {
+            long start = System.nanoTime();
+            root.updateLogicalState(TPF);
+            root.updateGeometricState();
+            space.update(TPF);
+            space.distributeEvents();
+            if (t >= WARMUP_TICKS)
+                total += System.nanoTime() - start;
+        }
+
+        space.destroy();
+        return total / 1000.0 / TICKS;
+    }
+
+}
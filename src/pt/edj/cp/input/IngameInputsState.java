@@ -9,6 +9,9 @@ import com.jme3.input.KeyInput;
 import com.jme3.input.controls.ActionListener;
 import com.jme3.input.controls.KeyTrigger;
 import com.jme3.math.Vector3f;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import pt.edj.cp.app.IngameState;
 import pt.edj.cp.character.CharacterAnimator;
 import pt.edj.cp.physics.PlatformerCharacterControl;
@@ -30,9 +33,9 @@ public class IngameInputsState extends AbstractAppState{
     private static final KeyTrigger TRIGGER_RET   = new KeyTrigger(KeyInput.KEY_RETURN);
     
     //action mappings
-    private static final String MAPPING_JUMP  = "Jump";
-    private static final String MAPPING_LEFT  = "Left";
-    private static final String MAPPING_RIGHT = "Right";
+    public static final String MAPPING_JUMP  = "Jump";
+    public static final String MAPPING_LEFT  = "Left";
+    public static final String MAPPING_RIGHT = "Right";
     private static final String MAPPING_QUIT  = "Quit";
     private static final String MAPPING_DEBUG  = "Debug";
     
@@ -50,6 +53,11 @@ public class IngameInputsState extends AbstractAppState{
     private PlatformerCharacterControl playerControl;
     private CharacterAnimator ani;
     
+    //game time and optional recording of all actions
+    private float time = 0.0f;
+    private InputScript recording;
+    private String recordingPath;
+    
     
     
     public IngameInputsState(PlatformerCharacterControl playerControl,
@@ -61,6 +69,7 @@ public class IngameInputsState extends AbstractAppState{
     
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
         this.app = (SimpleApplication) app;
         this.inputManager = app.getInputManager();
         
@@ -72,13 +81,40 @@ public class IngameInputsState extends AbstractAppState{
     
     @Override
     public void update(float tpf){
+        time += tpf;
         checkMovement();
     }
     
     
+    /**
+     * Sends an action as if its key had been pressed or released
+     */
+    public void injectAction(String mapping, boolean isPressed) {
+        actionListener.onAction(mapping, isPressed, 0.0f);
+    }
+    
+    
+    /**
+     * Records all following actions, they are written to the given file as
+     * an InputScript when the state is cleaned up
+     */
+    public void recordTo(String path) {
+        recording = new InputScript();
+        recordingPath = path;
+    }
+    
+    
     @Override
     public void cleanup() {
-        
+        if (recording != null) {
+            try {
+                recording.save(recordingPath);
+            } catch (IOException e) {
+                Logger.getLogger(IngameInputsState.class.getName()).log(
+                        Level.WARNING, "Cannot save input recording to " + recordingPath, e);
+            }
+            recording = null;
+        }
     }
     
     
@@ -99,6 +135,9 @@ public class IngameInputsState extends AbstractAppState{
     
     private ActionListener actionListener = new ActionListener() {
         public void onAction(String name, boolean isPressed, float tpf) {
+            if (recording != null)
+                recording.add(time, name, isPressed);
+            
             if (name.equals(MAPPING_LEFT)) {
                 if (isPressed){
                     if (!left) currMov = Movement.LEFT;
@@ -0,0 +1,135 @@
+package pt.edj.cp.input;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+
+
+/**
+ * A timed list of key actions, replayed into IngameInputsState by simulation
+ * runs or recorded from a normal game.
+ *
+ * The text format has one action per line: the game time in seconds, the
+ * action mapping name and "down" or "up", e.g. "2.50 Jump down". Empty lines
+ * and lines starting with # are ignored.
+ *
+ * Generated scripts can repeat their tail forever, see setRepeat(), so they
+ * do not have to be spelled out for the whole run.
+ */
+public class InputScript {
+
+    private ArrayList<Float> times = new ArrayList<Float>();
+    private ArrayList<String> mappings = new ArrayList<String>();
+    private ArrayList<Boolean> pressed = new ArrayList<Boolean>();
+
+    private int next = 0;
+
+    // tail of the script that is repeated, -1 for none
+    private int repeatFrom = -1;
+    private float repeatPeriod;
+    private float offset = 0.0f;
+
+
+    public static InputScript load(String path) throws IOException {
+        InputScript script = new InputScript();
+        BufferedReader in = new BufferedReader(new FileReader(path));
+
+        try {
+            String line;
+            int lineNr = 0;
+            while ((line = in.readLine()) != null) {
+                lineNr++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                    continue;
+
+                String[] parts = line.split("\\s+");
+                if (parts.length != 3)
+                    throw new IOException(path + ":" + lineNr + ": expected <time> <action> <down|up>");
+
+                try {
+                    script.add(Float.parseFloat(parts[0]), parts[1], parts[2].equals("down"));
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNr + ": bad time " + parts[0]);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        return script;
+    }
+
+
+    /**
+     * Runs right forever and jumps every jumpInterval seconds
+     */
+    public static InputScript sprint(float jumpInterval) {
+        InputScript script = new InputScript();
+        script.add(0.0f, IngameInputsState.MAPPING_RIGHT, true);
+        script.add(jumpInterval, IngameInputsState.MAPPING_JUMP, true);
+        script.add(jumpInterval + 0.4f, IngameInputsState.MAPPING_JUMP, false);
+        script.setRepeat(1, jumpInterval);
+        return script;
+    }
+
+
+    /**
+     * Actions have to be added in time order
+     */
+    public void add(float time, String mapping, boolean down) {
+        times.add(time);
+        mappings.add(mapping);
+        pressed.add(down);
+    }
+
+
+    /**
+     * After the last action, replays the actions from the given index on
+     * again, shifted by period seconds, and so on forever. Not kept by
+     * save().
+     */
+    public void setRepeat(int firstAction, float period) {
+        repeatFrom = firstAction;
+        repeatPeriod = period;
+    }
+
+
+    /**
+     * Sends all actions up to the given time that have not been sent yet
+     */
+    public void replay(float time, IngameInputsState inputs) {
+        while (next < times.size() && times.get(next) + offset <= time) {
+            inputs.injectAction(mappings.get(next), pressed.get(next));
+            next++;
+
+            if (next == times.size() && repeatFrom >= 0) {
+                next = repeatFrom;
+                offset += repeatPeriod;
+            }
+        }
+    }
+
+
+    public boolean isFinished() {
+        return repeatFrom < 0 && next >= times.size();
+    }
+
+
+    public void save(String path) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(path));
+        try {
+            for (int i = 0; i < times.size(); i++) {
+                out.printf(Locale.US, "%.3f %s %s%n", times.get(i), mappings.get(i),
+                        pressed.get(i) ? "down" : "up");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+package pt.edj.cp.physics;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+
+/**
+ * Finds the collectables the character touches without putting them into
+ * the physics space. Their centres and radii are kept in a spatial hash over
+ * x and y, and update() tests the capsule swept from the character's last
+ * position to the current one against the cells it overlaps, so items are
+ * not skipped when the character moves fast or the frame rate drops. Every entry fires its ICharacterContactHandler once and is then
+ * dropped, so collected items cost nothing until their zone goes away.
+ *
+ * A ghost per item, see WorldPhysicsManager.addGhost(), costs a broadphase
+ * proxy and pair cache entries for as long as it is in the space. update()
+ * runs on the render thread, so handlers may change the scene graph.
+ */
+public class CollectableSensor {
+
+    private static class Entry {
+        private final ICharacterContactHandler handler;
+        private final float x;
+        private final float y;
+        private final float z;
+        private final float radius;
+
+        // covered cells, inclusive
+        private int cx1, cy1, cx2, cy2;
+        private boolean hit;
+
+        public Entry(ICharacterContactHandler handler, Vector3f center, float radius) {
+            this.handler = handler;
+            this.x = center.x;
+            this.y = center.y;
+            this.z = center.z;
+            this.radius = radius;
+        }
+    }
+
+
+    private final float cellSize;
+    private final float characterRadius;
+    private final float characterHeight;
+
+    private HashMap<Long,ArrayList<Entry>> cells = new HashMap<Long,ArrayList<Entry>>();
+    private IdentityHashMap<ICharacterContactHandler,Entry> entries =
+            new IdentityHashMap<ICharacterContactHandler,Entry>();
+    private ArrayList<Entry> hits = new ArrayList<Entry>();
+
+    // start of the next sweep
+    private final Vector3f last = new Vector3f();
+    private boolean hasLast = false;
+
+    private long tests = 0;
+    private long contacts = 0;
+
+
+    /**
+     * @param cellSize          world size of a hash cell, best around the
+     *                          spacing of the items
+     * @param characterRadius   radius of the character's capsule
+     * @param characterHeight   total height of the capsule, which stands on
+     *                          the position passed to update()
+     */
+    public CollectableSensor(float cellSize, float characterRadius, float characterHeight) {
+        this.cellSize = cellSize;
+        this.characterRadius = characterRadius;
+        this.characterHeight = characterHeight;
+    }
+
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+
+    private int cell(float v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+
+    public void add(ICharacterContactHandler handler, Vector3f center, float radius) {
+        if (entries.containsKey(handler))
+            return;
+
+        Entry e = new Entry(handler, center, radius);
+        e.cx1 = cell(e.x - radius);
+        e.cy1 = cell(e.y - radius);
+        e.cx2 = cell(e.x + radius);
+        e.cy2 = cell(e.y + radius);
+
+        for (int cy = e.cy1; cy <= e.cy2; cy++) {
+            for (int cx = e.cx1; cx <= e.cx2; cx++) {
+                ArrayList<Entry> list = cells.get(key(cx, cy));
+                if (list == null) {
+                    list = new ArrayList<Entry>(4);
+                    cells.put(key(cx, cy), list);
+                }
+                list.add(e);
+            }
+        }
+        entries.put(handler, e);
+    }
+
+
+    /**
+     * Returns false if the handler was not in the sensor (anymore)
+     */
+    public boolean remove(ICharacterContactHandler handler) {
+        Entry e = entries.remove(handler);
+        if (e == null)
+            return false;
+
+        for (int cy = e.cy1; cy <= e.cy2; cy++) {
+            for (int cx = e.cx1; cx <= e.cx2; cx++) {
+                ArrayList<Entry> list = cells.get(key(cx, cy));
+                list.remove(e);
+                if (list.isEmpty())
+                    cells.remove(key(cx, cy));
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Fires all entries that the character touched on its way from the
+     * position of the last call to the given one. Moves longer than a cell
+     * are taken as teleports, only the new position is tested then. Handlers
+     * are called after the search, so they may add or remove entries.
+     */
+    public void update(Vector3f position) {
+        if (!hasLast || last.distanceSquared(position) > cellSize * cellSize)
+            last.set(position);
+        hasLast = true;
+
+        if (entries.isEmpty()) {
+            last.set(position);
+            return;
+        }
+
+        // the capsule's inner segment is vertical, it is swept along d
+        float px = last.x;
+        float py = last.y + characterRadius;
+        float pz = last.z;
+        float dx = position.x - px;
+        float dy = position.y - last.y;
+        float dz = position.z - pz;
+        float inner = characterHeight - 2 * characterRadius;
+
+        int cx1 = cell(Math.min(px, position.x) - characterRadius);
+        int cx2 = cell(Math.max(px, position.x) + characterRadius);
+        int cy1 = cell(Math.min(last.y, position.y));
+        int cy2 = cell(Math.max(last.y, position.y) + characterHeight);
+        last.set(position);
+
+        for (int cy = cy1; cy <= cy2; cy++) {
+            for (int cx = cx1; cx <= cx2; cx++) {
+                ArrayList<Entry> list = cells.get(key(cx, cy));
+                if (list == null)
+                    continue;
+
+                for (int i = 0; i < list.size(); i++) {
+                    Entry e = list.get(i);
+                    if (e.hit)
+                        continue;
+                    tests++;
+
+                    float reach = e.radius + characterRadius;
+                    if (sweptDistanceSq(e.x - px, e.y - py, e.z - pz, dx, dy, dz, inner)
+                            <= reach * reach) {
+                        e.hit = true;
+                        hits.add(e);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < hits.size(); i++) {
+            Entry e = hits.get(i);
+            remove(e.handler);
+            contacts++;
+            e.handler.characterContact();
+        }
+        hits.clear();
+    }
+
+
+    /**
+     * Squared distance between the point w and the parallelogram spanned by
+     * d and the vertical (0, h, 0), both from the origin. For a fixed t along
+     * d the best height is a clamp, what is left is convex and piecewise
+     * quadratic in t, so its minimum is one of the pieces' own minima, a
+     * seam or an end.
+     */
+    private static float sweptDistanceSq(float wx, float wy, float wz,
+                                         float dx, float dy, float dz, float h) {
+        float dd = dx * dx + dy * dy + dz * dz;
+        float best = distanceSq(0.0f, wx, wy, wz, dx, dy, dz, h);
+        if (dd < 1e-12f)
+            return best;
+
+        best = Math.min(best, distanceSq(1.0f, wx, wy, wz, dx, dy, dz, h));
+
+        float hd = dx * dx + dz * dz;
+        float hw = dx * wx + dz * wz;
+        if (hd > 1e-12f)
+            best = Math.min(best, distanceSq(hw / hd, wx, wy, wz, dx, dy, dz, h));
+        best = Math.min(best, distanceSq((hw + dy * wy) / dd, wx, wy, wz, dx, dy, dz, h));
+        best = Math.min(best, distanceSq((hw + dy * (wy - h)) / dd, wx, wy, wz, dx, dy, dz, h));
+        if (dy * dy > 1e-12f) {
+            best = Math.min(best, distanceSq(wy / dy, wx, wy, wz, dx, dy, dz, h));
+            best = Math.min(best, distanceSq((wy - h) / dy, wx, wy, wz, dx, dy, dz, h));
+        }
+        return best;
+    }
+
+
+    private static float distanceSq(float t, float wx, float wy, float wz,
+                                    float dx, float dy, float dz, float h) {
+        t = clamp(t, 0.0f, 1.0f);
+        float ex = wx - t * dx;
+        float ez = wz - t * dz;
+        float ey = wy - t * dy;
+        ey -= clamp(ey, 0.0f, h);
+        return ex * ex + ey * ey + ez * ez;
+    }
+
+
+    private static float clamp(float v, float min, float max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+
+    public int getCount() {
+        return entries.size();
+    }
+
+
+    /**
+     * Distance tests done so far
+     */
+    public long getTests() {
+        return tests;
+    }
+
+
+    public long getContacts() {
+        return contacts;
+    }
+
+}
@@ -0,0 +1,92 @@
+package pt.edj.cp.physics;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.Vector3f;
+import java.util.HashMap;
+
+
+/**
+ * Shared collision shapes for ICollisionShapeProvider implementations.
+ * Sizes are rounded to multiples of QUANTUM, so items of nearly the same
+ * size share one shape instead of each body creating its own.
+ *
+ * Shapes from the cache are shared between bodies and must not be scaled
+ * or otherwise modified.
+ */
+public class CollisionShapeCache {
+
+    // far below the default collision margin of 0.04
+    private static final float QUANTUM = 1.0f / 32.0f;
+
+    // quantized sizes are packed into 21 bits each
+    private static final int MAX_STEPS = (1 << 21) - 1;
+
+    private static final HashMap<Long,CollisionShape> boxes = new HashMap<Long,CollisionShape>();
+    private static final HashMap<Integer,CollisionShape> spheres = new HashMap<Integer,CollisionShape>();
+
+    private static long hits = 0;
+    private static long misses = 0;
+
+
+    private static int quantize(float size) {
+        int steps = Math.round(size / QUANTUM);
+        return Math.max(1, Math.min(MAX_STEPS, steps));
+    }
+
+
+    /**
+     * Box with (about) the given half extents
+     */
+    public static synchronized CollisionShape getBox(Vector3f halfExtents) {
+        int qx = quantize(halfExtents.x);
+        int qy = quantize(halfExtents.y);
+        int qz = quantize(halfExtents.z);
+        Long key = ((long) qx << 42) | ((long) qy << 21) | qz;
+
+        CollisionShape shape = boxes.get(key);
+        if (shape == null) {
+            shape = new BoxCollisionShape(new Vector3f(qx * QUANTUM, qy * QUANTUM, qz * QUANTUM));
+            boxes.put(key, shape);
+            misses++;
+        } else {
+            hits++;
+        }
+        return shape;
+    }
+
+
+    /**
+     * Sphere with (about) the given radius
+     */
+    public static synchronized CollisionShape getSphere(float radius) {
+        Integer key = quantize(radius);
+
+        CollisionShape shape = spheres.get(key);
+        if (shape == null) {
+            shape = new SphereCollisionShape(key * QUANTUM);
+            spheres.put(key, shape);
+            misses++;
+        } else {
+            hits++;
+        }
+        return shape;
+    }
+
+
+    public static synchronized int getShapeCount() {
+        return boxes.size() + spheres.size();
+    }
+
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+}
@@ -0,0 +1,273 @@
+package pt.edj.cp.physics;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.CompoundCollisionShape;
+import com.jme3.bullet.collision.shapes.infos.ChildCollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+
+/**
+ * Merges the static platforms of a cluster of zones into a single static
+ * body with a CompoundCollisionShape, so the broadphase only sees one object
+ * per cluster and streaming a platform in or out does not add or remove a
+ * body of its own.
+ *
+ * Clusters are rebuilt in update() when their platforms changed. Contacts
+ * with a cluster body are resolved back to the platform spatial through
+ * getChild(). jbullet does not report the child shape index of compound
+ * contacts, so the platform is looked up from the contact point instead:
+ * each cluster keeps the world bounds of its platforms.
+ */
+public class CompoundPlatformBodies {
+
+    /**
+     * The static platforms in one cell of the cluster grid
+     */
+    private static class Cluster {
+        private final int x;
+        private final int y;
+        private final Vector3f origin;
+
+        // shapes.get(i) and bounds[6 * i...] belong to children.get(i)
+        private final ArrayList<Spatial> children = new ArrayList<Spatial>();
+        private final ArrayList<CollisionShape> shapes = new ArrayList<CollisionShape>();
+        private float[] bounds = new float[6 * 16];     // min xyz, max xyz
+
+        private PhysicsRigidBody body;
+        private boolean dirty;
+
+        public Cluster(int x, int y, Vector2f size) {
+            this.x = x;
+            this.y = y;
+            this.origin = new Vector3f(x * size.x, y * size.y, 0.0f);
+        }
+
+        public void rebuild(PhysicsSpace space) {
+            if (body != null)
+                space.remove(body);
+
+            int n = children.size();
+            if (n == 0) {
+                body = null;
+                return;
+            }
+
+            if (bounds.length < 6 * n)
+                bounds = new float[6 * Math.max(n, 2 * bounds.length / 6)];
+
+            CompoundCollisionShape compound = new CompoundCollisionShape();
+            for (int i = 0; i < n; i++) {
+                Spatial s = children.get(i);
+                Vector3f location = s.getWorldTranslation().subtract(origin);
+                Matrix3f rotation = s.getWorldRotation().toRotationMatrix();
+                CollisionShape cs = shapes.get(i);
+
+                // compounds cannot be nested, mesh shapes of nodes are flattened
+                if (cs instanceof CompoundCollisionShape) {
+                    for (ChildCollisionShape child : ((CompoundCollisionShape) cs).getChildren())
+                        compound.addChildShape(child.shape,
+                                               rotation.mult(child.location).addLocal(location),
+                                               rotation.mult(child.rotation));
+                } else {
+                    compound.addChildShape(cs, location, rotation);
+                }
+
+                storeBounds(i, s);
+            }
+
+            if (body == null) {
+                body = new PhysicsRigidBody(compound, 0);
+                body.setUserObject(this);
+                body.setFriction(1f);
+                body.setCollisionGroup(WorldPhysicsManager.GROUP_PLATFORM);
+                body.setCollideWithGroups(WorldPhysicsManager.GROUP_CHARACTER);
+                body.setPhysicsLocation(origin);
+            } else {
+                body.setCollisionShape(compound);
+            }
+
+            space.add(body);
+        }
+
+        private void storeBounds(int i, Spatial s) {
+            int b = 6 * i;
+            BoundingVolume bv = s.getWorldBound();
+            Vector3f c = (bv != null) ? bv.getCenter() : s.getWorldTranslation();
+            float ex, ey, ez;
+
+            if (bv == null) {
+                ex = ey = ez = 0.0f;
+            } else if (bv instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox) bv;
+                ex = box.getXExtent();
+                ey = box.getYExtent();
+                ez = box.getZExtent();
+            } else {
+                ex = ey = ez = ((BoundingSphere) bv).getRadius();
+            }
+
+            bounds[b]     = c.x - ex;
+            bounds[b + 1] = c.y - ey;
+            bounds[b + 2] = c.z - ez;
+            bounds[b + 3] = c.x + ex;
+            bounds[b + 4] = c.y + ey;
+            bounds[b + 5] = c.z + ez;
+        }
+
+        /**
+         * The platform whose bounds are closest to the given world point
+         */
+        public Spatial find(Vector3f p) {
+            Spatial best = null;
+            float bestDist = Float.POSITIVE_INFINITY;
+
+            for (int i = 0; i < children.size(); i++) {
+                int b = 6 * i;
+                float dx = Math.max(0.0f, Math.max(bounds[b] - p.x, p.x - bounds[b + 3]));
+                float dy = Math.max(0.0f, Math.max(bounds[b + 1] - p.y, p.y - bounds[b + 4]));
+                float dz = Math.max(0.0f, Math.max(bounds[b + 2] - p.z, p.z - bounds[b + 5]));
+                float dist = dx * dx + dy * dy + dz * dz;
+
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    best = children.get(i);
+                }
+            }
+
+            return best;
+        }
+    }
+
+
+    /**
+     * Returns the platform spatial of a cluster body that is closest to the
+     * given contact point, or null if the object is not a cluster body
+     */
+    public static Spatial getChild(PhysicsCollisionObject object, Vector3f worldPoint) {
+        Object user = object.getUserObject();
+        return (user instanceof Cluster) ? ((Cluster) user).find(worldPoint) : null;
+    }
+
+
+    private final PhysicsSpace space;
+    private final Vector2f clusterSize;
+
+    private HashMap<Long,Cluster> clusters = new HashMap<Long,Cluster>();
+    private IdentityHashMap<Spatial,Cluster> clusterOf = new IdentityHashMap<Spatial,Cluster>();
+    private ArrayList<Cluster> dirty = new ArrayList<Cluster>();
+
+    private long rebuilds = 0;
+
+
+    /**
+     * @param clusterSize   world size of a cluster, best a multiple of the
+     *                      zone size
+     */
+    public CompoundPlatformBodies(PhysicsSpace space, Vector2f clusterSize) {
+        this.space = space;
+        this.clusterSize = clusterSize;
+    }
+
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+
+    private void markDirty(Cluster cluster) {
+        if (!cluster.dirty) {
+            cluster.dirty = true;
+            dirty.add(cluster);
+        }
+    }
+
+
+    /**
+     * Adds a static spatial to the cluster around its world position. The
+     * shape comes from ICollisionShapeProvider, or from the meshes if there
+     * is none.
+     */
+    public void add(Spatial spatial) {
+        if (clusterOf.containsKey(spatial))
+            return;
+
+        Vector3f pos = spatial.getWorldTranslation();
+        int cx = (int) Math.floor(pos.x / clusterSize.x);
+        int cy = (int) Math.floor(pos.y / clusterSize.y);
+
+        Cluster cluster = clusters.get(key(cx, cy));
+        if (cluster == null) {
+            cluster = new Cluster(cx, cy, clusterSize);
+            clusters.put(key(cx, cy), cluster);
+        }
+
+        CollisionShape cs = null;
+        if (spatial instanceof ICollisionShapeProvider)
+            cs = ((ICollisionShapeProvider) spatial).getCollisionShape();
+        if (cs == null)
+            cs = CollisionShapeFactory.createMeshShape(spatial);
+
+        cluster.children.add(spatial);
+        cluster.shapes.add(cs);
+        clusterOf.put(spatial, cluster);
+        markDirty(cluster);
+    }
+
+
+    /**
+     * Returns false if the spatial is not part of any cluster
+     */
+    public boolean remove(Spatial spatial) {
+        Cluster cluster = clusterOf.remove(spatial);
+        if (cluster == null)
+            return false;
+
+        int i = cluster.children.indexOf(spatial);
+        cluster.children.remove(i);
+        cluster.shapes.remove(i);
+        markDirty(cluster);
+        return true;
+    }
+
+
+    /**
+     * Rebuilds the bodies of all clusters that changed, before the next
+     * physics step
+     */
+    public void update() {
+        for (int i = 0; i < dirty.size(); i++) {
+            Cluster cluster = dirty.get(i);
+            cluster.dirty = false;
+            cluster.rebuild(space);
+            rebuilds++;
+
+            if (cluster.body == null)
+                clusters.remove(key(cluster.x, cluster.y));
+        }
+        dirty.clear();
+    }
+
+
+    public int getClusterCount() {
+        return clusters.size();
+    }
+
+
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+}
@@ -0,0 +1,11 @@
+package pt.edj.cp.physics;
+
+/**
+ * Spatials whose physics objects react to the character touching them.
+ * The spatial is the user object of its collision object, so contacts are
+ * dispatched without any lookups, see PlatformCollisionListener. With a
+ * CollectableSensor, the handler is called by the sensor instead.
+ */
+public interface ICharacterContactHandler {
+    public void characterContact();
+}
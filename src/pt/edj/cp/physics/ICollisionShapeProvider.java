@@ -1,11 +1,14 @@
-package pt.edj.cp.physics;
-
-import com.jme3.bullet.collision.shapes.CollisionShape;
-
-/**
- *
- * @author rechtslang
- */
-public interface ICollisionShapeProvider {
-    public CollisionShape getCollisionShape();
-}
+package pt.edj.cp.physics;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+
+/**
+ *
+ * @author rechtslang
+ */
+public interface ICollisionShapeProvider {
+    /**
+     * The shape may be shared with other bodies, see CollisionShapeCache
+     */
+    public CollisionShape getCollisionShape();
+}
@@ -1,13 +1,16 @@
 package pt.edj.cp.physics;
 
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.dispatch.CollisionWorld;
+import com.bulletphysics.linearmath.Transform;
+import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.collision.PhysicsCollisionEvent;
 import com.jme3.bullet.collision.PhysicsCollisionListener;
-import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.bullet.control.BetterCharacterControl;
+import com.jme3.bullet.util.Converter;
 import com.jme3.math.Vector3f;
-import com.jme3.util.TempVars;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import pt.edj.cp.input.IMovementListener;
 
@@ -17,7 +20,8 @@ public class PlatformerCharacterControl extends BetterCharacterControl implement
     private static final Vector3f CANCEL_JUMP_GRAVITIY = new Vector3f(0,-60,0);
     
     
-    // for movement listeners:
+    // for movement listeners, always called from update() on the render
+    // thread, never from the physics tick:
     private Set<IMovementListener> movementListeners;
     private Vector3f lastPosition = null;
     private boolean falling;
@@ -64,33 +68,142 @@ public class PlatformerCharacterControl extends BetterCharacterControl implement
     }
     
     
+    /**
+     * Keeps the closest hit of a ray that is not the character itself,
+     * reused for every ground ray
+     */
+    private class GroundRayCallback extends CollisionWorld.RayResultCallback {
+        private final javax.vecmath.Vector3f normal = new javax.vecmath.Vector3f();
+        private final Transform transform = new Transform();
+        
+        public void reset() {
+            closestHitFraction = 1.0f;
+            collisionObject = null;
+        }
+        
+        @Override
+        public float addSingleResult(CollisionWorld.LocalRayResult rayResult, boolean normalInWorldSpace) {
+            CollisionObject hit = rayResult.collisionObject;
+            if (hit == rigidBody.getObjectId())
+                return closestHitFraction;
+            
+            closestHitFraction = rayResult.hitFraction;
+            collisionObject = hit;
+            normal.set(rayResult.hitNormalLocal);
+            if (!normalInWorldSpace)
+                hit.getWorldTransform(transform).basis.transform(normal);
+            return closestHitFraction;
+        }
+    }
+    
+    
+    // ground state, refreshed once per physics tick by checkOnGround()
+    private final GroundRayCallback groundRay = new GroundRayCallback();
+    private final javax.vecmath.Vector3f rayFrom = new javax.vecmath.Vector3f();
+    private final javax.vecmath.Vector3f rayTo = new javax.vecmath.Vector3f();
+    private final Vector3f groundNormal = new Vector3f(Vector3f.UNIT_Y);
+    private final Vector3f groundPoint = new Vector3f();
+    private PhysicsCollisionObject groundObject;
+    private long tick = 0;
+    private long groundTick = -1;
+    
+    
     @Override
-    public boolean isOnGround(){
-        //modified
-        TempVars vars = TempVars.get();
-        Vector3f location1 = vars.vect1;
-        Vector3f location2 = vars.vect2;
-        Vector3f rayVector1 = vars.vect3;
-        Vector3f rayVector2 = vars.vect4;
+    public void prePhysicsTick(PhysicsSpace space, float tpf) {
+        tick++;
+        super.prePhysicsTick(space, tpf);
+    }
+    
+    
+    /**
+     * Casts two rays down from both sides of the character, called by
+     * prePhysicsTick(). The result is kept for the whole tick.
+     */
+    @Override
+    protected void checkOnGround() {
+        if (groundTick == tick || space == null)
+            return;
+        groundTick = tick;
+        
         float height = getFinalHeight();
-        location1.set(localUp.add( radius/1.5f, 0, 0)).multLocal(height).addLocal(this.location);
-        location2.set(localUp.add(-radius/1.5f, 0, 0)).multLocal(height).addLocal(this.location);
-        rayVector1.set(localUp).multLocal(-height - 0.1f).addLocal(location1);
-        rayVector2.set(localUp).multLocal(-height - 0.1f).addLocal(location2);
-        List<PhysicsRayTestResult> results1 = space.rayTest(location1, rayVector1);
-        List<PhysicsRayTestResult> results2 = space.rayTest(location2, rayVector2);
-        vars.release();
-        for (PhysicsRayTestResult physicsRayTestResult : results1) {
-            if (!physicsRayTestResult.getCollisionObject().equals(rigidBody)) {
-                return true;
+        float offset = radius / 1.5f;
+        boolean hit = false;
+        float closest = 1.0f;
+        
+        for (int side = -1; side <= 1; side += 2) {
+            // from the top of the character to 0.1 below its feet
+            rayFrom.set(location.x + side * offset * height + localUp.x * height,
+                        location.y + localUp.y * height,
+                        location.z + localUp.z * height);
+            rayTo.set(rayFrom.x - localUp.x * (height + 0.1f),
+                      rayFrom.y - localUp.y * (height + 0.1f),
+                      rayFrom.z - localUp.z * (height + 0.1f));
+            
+            groundRay.reset();
+            space.getDynamicsWorld().rayTest(rayFrom, rayTo, groundRay);
+            
+            if (groundRay.hasHit() && (!hit || groundRay.closestHitFraction < closest)) {
+                hit = true;
+                closest = groundRay.closestHitFraction;
+                groundObject = (PhysicsCollisionObject) groundRay.collisionObject.getUserPointer();
+                Converter.convert(groundRay.normal, groundNormal);
+                groundPoint.set(rayFrom.x + closest * (rayTo.x - rayFrom.x),
+                                rayFrom.y + closest * (rayTo.y - rayFrom.y),
+                                rayFrom.z + closest * (rayTo.z - rayFrom.z));
             }
         }
-        for (PhysicsRayTestResult physicsRayTestResult : results2) {
-            if (!physicsRayTestResult.getCollisionObject().equals(rigidBody)) {
-                return true;
-            }
+        
+        onGround = hit;
+        if (!hit) {
+            groundObject = null;
+            groundNormal.set(localUp);
         }
-        return false;
+    }
+    
+    
+    /**
+     * Ground state of the last physics tick
+     */
+    @Override
+    public boolean isOnGround(){
+        return onGround;
+    }
+    
+    
+    /**
+     * Surface normal below the character, up while in the air
+     */
+    public Vector3f getGroundNormal(Vector3f store) {
+        return (store != null) ? store.set(groundNormal) : groundNormal.clone();
+    }
+    
+    
+    /**
+     * Where the ground was hit, only valid while on ground
+     */
+    public Vector3f getGroundPoint(Vector3f store) {
+        return (store != null) ? store.set(groundPoint) : groundPoint.clone();
+    }
+    
+    
+    /**
+     * What the character stands on, or null. For platforms merged into a
+     * compound cluster body, see CompoundPlatformBodies.getChild().
+     */
+    public PhysicsCollisionObject getGroundObject() {
+        return groundObject;
+    }
+    
+    
+    /**
+     * Puts the character at the given position, moving with the given
+     * velocity, for callers that move it along a fixed path instead of
+     * through the inputs, like the benchmark scenarios. Render thread only.
+     */
+    public void drive(Vector3f position, Vector3f velocity) {
+        warp(position);
+        rigidBody.setLinearVelocity(velocity);
+        walkDirection.set(velocity.x, 0, velocity.z);
     }
     
     
@@ -112,6 +225,12 @@ public class PlatformerCharacterControl extends BetterCharacterControl implement
     }
     
     
+    public void setCollisionGroups(int group, int collideWith) {
+        rigidBody.setCollisionGroup(group);
+        rigidBody.setCollideWithGroups(collideWith);
+    }
+    
+    
     public void addMovementListener(IMovementListener l) {
         movementListeners.add(l);
     }
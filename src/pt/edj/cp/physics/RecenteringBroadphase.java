@@ -0,0 +1,132 @@
+package pt.edj.cp.physics;
+
+import com.bulletphysics.collision.broadphase.AxisSweep3;
+import com.bulletphysics.collision.broadphase.BroadphaseInterface;
+import com.bulletphysics.collision.broadphase.BroadphaseProxy;
+import com.bulletphysics.collision.broadphase.Dispatcher;
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.dynamics.DynamicsWorld;
+import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.math.Vector3f;
+import pt.edj.cp.input.IMovementListener;
+
+
+/**
+ * Replaces the broadphase of a physics space with an AxisSweep3 that only
+ * covers a box around the player. The world is endless, but only the zones
+ * around the player are alive, so a bounded sweep-and-prune fits them with
+ * full precision. When the player gets too far from the centre, the sweep
+ * is rebuilt around the new position and all proxies move over.
+ *
+ * Objects outside the bounds still collide correctly, they are just clamped
+ * to the border of the sweep and pair up less efficiently.
+ *
+ * The pair cache of the original broadphase is kept, since the physics
+ * space has installed its collision group filter and ghost callback there.
+ * Rebuilds must not overlap with a physics step.
+ *
+ * The AxisSweep3 of the bundled jbullet fails bytecode verification on
+ * current JVMs (VerifyError), unless they run with
+ * -XX:+UnlockDiagnosticVMOptions -XX:-BytecodeVerificationRemote.
+ */
+public class RecenteringBroadphase implements IMovementListener {
+
+    private final PhysicsSpace space;
+    private final Vector3f halfExtents;
+    private final Vector3f threshold;
+    private final int maxHandles;
+
+    private final Vector3f center = new Vector3f();
+    private int rebuilds = 0;
+
+    private final Transform transform = new Transform();
+    private final javax.vecmath.Vector3f aabbMin = new javax.vecmath.Vector3f();
+    private final javax.vecmath.Vector3f aabbMax = new javax.vecmath.Vector3f();
+    private short[] groups = new short[0];
+    private short[] masks = new short[0];
+
+
+    /**
+     * @param center        initial centre of the swept box
+     * @param halfExtents   half size of the swept box, should cover all live
+     *                      zones plus the distance to the next rebuild
+     * @param threshold     distance per axis from the centre that triggers a
+     *                      rebuild
+     * @param maxHandles    maximum number of objects in the space, up to 32766
+     */
+    public RecenteringBroadphase(PhysicsSpace space, Vector3f center, Vector3f halfExtents,
+                                 Vector3f threshold, int maxHandles) {
+        this.space = space;
+        this.halfExtents = halfExtents.clone();
+        this.threshold = threshold.clone();
+        this.maxHandles = maxHandles;
+
+        recenter(center);
+    }
+
+
+    public void movement(Vector3f newPosition, Vector3f delta) {
+        if (Math.abs(newPosition.x - center.x) > threshold.x
+                || Math.abs(newPosition.y - center.y) > threshold.y
+                || Math.abs(newPosition.z - center.z) > threshold.z)
+            recenter(newPosition);
+    }
+
+
+    /**
+     * Rebuilds the sweep around the given point
+     */
+    public void recenter(Vector3f c) {
+        DynamicsWorld world = space.getDynamicsWorld();
+        BroadphaseInterface old = world.getBroadphase();
+        Dispatcher dispatcher = world.getDispatcher();
+        ObjectArrayList<CollisionObject> objects = world.getCollisionObjectArray();
+        int n = objects.size();
+
+        if (groups.length < n) {
+            groups = new short[2 * n];
+            masks = new short[2 * n];
+        }
+
+        // created first, so a failure leaves the old broadphase intact
+        AxisSweep3 sweep = new AxisSweep3(
+                new javax.vecmath.Vector3f(c.x - halfExtents.x, c.y - halfExtents.y, c.z - halfExtents.z),
+                new javax.vecmath.Vector3f(c.x + halfExtents.x, c.y + halfExtents.y, c.z + halfExtents.z),
+                maxHandles, old.getOverlappingPairCache());
+
+        // destroying the proxies also drops their pairs from the shared cache
+        for (int i = 0; i < n; i++) {
+            CollisionObject obj = objects.getQuick(i);
+            BroadphaseProxy proxy = obj.getBroadphaseHandle();
+            groups[i] = proxy.collisionFilterGroup;
+            masks[i] = proxy.collisionFilterMask;
+            old.destroyProxy(proxy, dispatcher);
+            obj.setBroadphaseHandle(null);
+        }
+
+        world.setBroadphase(sweep);
+
+        for (int i = 0; i < n; i++) {
+            CollisionObject obj = objects.getQuick(i);
+            obj.getCollisionShape().getAabb(obj.getWorldTransform(transform), aabbMin, aabbMax);
+            obj.setBroadphaseHandle(sweep.createProxy(aabbMin, aabbMax,
+                    obj.getCollisionShape().getShapeType(), obj, groups[i], masks[i], dispatcher, null));
+        }
+
+        center.set(c);
+        rebuilds++;
+    }
+
+
+    public Vector3f getCenter() {
+        return center;
+    }
+
+
+    public int getRebuilds() {
+        return rebuilds;
+    }
+
+}
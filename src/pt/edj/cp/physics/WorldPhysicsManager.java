@@ -1,21 +1,30 @@
 package pt.edj.cp.physics;
 
+import com.bulletphysics.collision.broadphase.BroadphaseInterface;
+import com.bulletphysics.collision.broadphase.DbvtBroadphase;
 import com.jme3.app.Application;
 import com.jme3.app.SimpleApplication;
 import com.jme3.bullet.BulletAppState;
 import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
 import com.jme3.bullet.control.BetterCharacterControl;
 import com.jme3.bullet.control.GhostControl;
 import com.jme3.bullet.control.PhysicsControl;
 import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 public class WorldPhysicsManager {
     
+    private static final Logger logger = Logger.getLogger(WorldPhysicsManager.class.getName());
+    
     //physics parameters
     private static final float    PLAYER_SPEED      = 5.0f;
     public  static final Vector3f DIR_LEFT          = new Vector3f(-PLAYER_SPEED, 0, 0);
@@ -32,29 +41,59 @@ public class WorldPhysicsManager {
     private static final boolean  DEBUG_MODE        = false;
     private static final float    CCD_MOTION_THRESH = 0.1f;
     
+    //collision groups: platforms and collectables only pair with the character
+    public  static final int      GROUP_WORLD       = PhysicsCollisionObject.COLLISION_GROUP_01;
+    public  static final int      GROUP_CHARACTER   = PhysicsCollisionObject.COLLISION_GROUP_02;
+    public  static final int      GROUP_PLATFORM    = PhysicsCollisionObject.COLLISION_GROUP_03;
+    public  static final int      GROUP_COLLECTABLE = PhysicsCollisionObject.COLLISION_GROUP_04;
+    
     
     private SimpleApplication app;
     private BulletAppState bulletAppState;
     private RigidBodyControl scenePhysics;
     private PlatformerCharacterControl playerControl;
+    private CompoundPlatformBodies clusters;
+    private CollectableSensor sensor;
     private Node sceneNode;
     private Node characterNode;
     
+    // for addToSensor(), the jME Vector3f takes the short name
+    private final javax.vecmath.Vector3f boundsCenter = new javax.vecmath.Vector3f();
+    private final float[] boundsRadius = new float[1];
+    
     
     
     public WorldPhysicsManager(Application app,
                               Node sceneNode,
                               Node characterNode){
+        this(app, sceneNode, characterNode, false);
+    }
+    
+    
+    /**
+     * With parallel set, the physics step runs on its own thread while the
+     * frame is rendered (ThreadingType.PARALLEL). It still never overlaps
+     * with the update of the scene graph: BulletAppState waits for the step
+     * in postRender(), and collision events are queued by the physics space
+     * and handed out on the render thread in BulletAppState.update().
+     * Only PhysicsTickListeners are called on the physics thread.
+     */
+    public WorldPhysicsManager(Application app,
+                              Node sceneNode,
+                              Node characterNode,
+                              boolean parallel){
         this.app = (SimpleApplication) app;
         this.sceneNode = sceneNode;
         this.characterNode = characterNode;
-        initialize();
+        initialize(parallel);
     }
     
     
-    public final void initialize() {
+    public final void initialize(boolean parallel) {
         //load physics engine
         this.bulletAppState = new BulletAppState();
+        if (parallel)
+            bulletAppState.setThreadingType(BulletAppState.ThreadingType.PARALLEL);
         app.getStateManager().attach(bulletAppState);
         
         //activate physics
@@ -73,6 +112,8 @@ public class WorldPhysicsManager {
         playerControl.setJumpForce(JUMP_FORCE);
         playerControl.setGravity(CHARACTER_GRAVITY);
         playerControl.setPhysicsDamping(PHYSICS_DAMPING);
+        playerControl.setCollisionGroups(GROUP_CHARACTER,
+                                         GROUP_WORLD | GROUP_PLATFORM | GROUP_COLLECTABLE);
         
         //add character control to character model
         characterNode.addControl(playerControl);
@@ -93,6 +134,92 @@ public class WorldPhysicsManager {
     }
     
     
+    /**
+     * From now on, static spatials are merged into one compound body per
+     * cluster of the given size instead of getting a body each, see
+     * CompoundPlatformBodies. Call before adding any platforms.
+     */
+    public void enableCompoundClusters(Vector2f clusterSize) {
+        clusters = new CompoundPlatformBodies(getPhysicsSpace(), clusterSize);
+    }
+    
+    
+    public CompoundPlatformBodies getCompoundClusters() {
+        return clusters;
+    }
+    
+    
+    /**
+     * From now on, addGhost() puts spatials that handle character contacts
+     * into a CollectableSensor with hash cells of the given size, instead
+     * of giving them a GhostControl each. Call before adding any.
+     */
+    public void enableCollectableSensor(float cellSize) {
+        sensor = new CollectableSensor(cellSize, CHARACTER_RADIUS, CHARACTER_HEIGHT);
+    }
+    
+    
+    public CollectableSensor getCollectableSensor() {
+        return sensor;
+    }
+    
+    
+    /**
+     * Tunes the default DBVT broadphase: how many frames of motion the moving
+     * tree predicts (larger boxes, fewer re-inserts), and how many nodes of
+     * the static and moving tree are re-balanced per step. Most live objects
+     * are static platforms, so the static tree needs little optimisation.
+     */
+    public void tuneDbvt(float predictedFrames, int fixedUpdates, int dynamicUpdates) {
+        tuneDbvt(getPhysicsSpace(), predictedFrames, fixedUpdates, dynamicUpdates);
+    }
+    
+    
+    public static void tuneDbvt(PhysicsSpace space, float predictedFrames, int fixedUpdates,
+                                int dynamicUpdates) {
+        BroadphaseInterface bp = space.getDynamicsWorld().getBroadphase();
+        if (!(bp instanceof DbvtBroadphase))
+            return;
+        
+        DbvtBroadphase dbvt = (DbvtBroadphase) bp;
+        dbvt.predictedframes = predictedFrames;
+        dbvt.fupdates = fixedUpdates;
+        dbvt.dupdates = dynamicUpdates;
+    }
+    
+    
+    /**
+     * Replaces the broadphase with an AxisSweep3 around the character, which
+     * is rebuilt whenever the character gets further than threshold from its
+     * centre, see RecenteringBroadphase. Register the result as movement
+     * listener of the character control.
+     * 
+     * Returns null and keeps the current broadphase if the JVM rejects
+     * jbullet's AxisSweep3.
+     */
+    public RecenteringBroadphase useRecenteringBroadphase(Vector3f halfExtents, Vector3f threshold,
+                                                          int maxHandles) {
+        try {
+            return new RecenteringBroadphase(getPhysicsSpace(), characterNode.getWorldTranslation(),
+                                             halfExtents, threshold, maxHandles);
+        } catch (VerifyError e) {
+            logger.log(Level.WARNING, "AxisSweep3 not usable on this JVM, keeping DBVT", e);
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Applies the changes of this frame before the next physics step
+     */
+    public void update() {
+        if (clusters != null)
+            clusters.update();
+        if (sensor != null)
+            sensor.update(characterNode.getWorldTranslation());
+    }
+    
+    
     public void addChildrenToPhysicsScene(Node sceneNode){
         for (Spatial s : sceneNode.getChildren())
             addToPhysicsScene(s);
@@ -110,33 +237,119 @@ public class WorldPhysicsManager {
     }
     
     public void addToPhysicsScene(Spatial spatial){
-        RigidBodyControl platformPhysics = createRigidBodyControl(spatial);
-        spatial.addControl(platformPhysics);
-
-        platformPhysics.setKinematic(true);
-        platformPhysics.setKinematicSpatial(true);
-        platformPhysics.setFriction(1f);
-        //platformPhysics.setCcdMotionThreshold(CCD_MOTION_THRESH);
+        addToPhysicsScene(spatial, false);
+    }
+    
+    
+    /**
+     * Non-moving spatials become static bodies, placed once at the spatial's
+     * current world transform. Only moving ones are kinematic and follow
+     * their spatial on every physics tick.
+     */
+    public void addToPhysicsScene(Spatial spatial, boolean moving){
+        if (clusters != null && !moving) {
+            clusters.add(spatial);
+            return;
+        }
+        
+        RigidBodyControl platformPhysics = spatial.getControl(RigidBodyControl.class);
+        
+        if (platformPhysics == null) {
+            platformPhysics = createRigidBodyControl(spatial);
+            spatial.addControl(platformPhysics);
+            platformPhysics.setFriction(1f);
+            //platformPhysics.setCcdMotionThreshold(CCD_MOTION_THRESH);
+        } else if (spatial instanceof ICollisionShapeProvider) {
+            // recycled spatial, its shape may have changed
+            CollisionShape cs = ((ICollisionShapeProvider) spatial).getCollisionShape();
+            if (cs != null && cs != platformPhysics.getCollisionShape())
+                platformPhysics.setCollisionShape(cs);
+        }
+        
+        platformPhysics.setKinematic(moving);
+        platformPhysics.setKinematicSpatial(moving);
+        if (spatial instanceof ICharacterContactHandler) {
+            platformPhysics.setCollisionGroup(GROUP_PLATFORM);
+            platformPhysics.setCollideWithGroups(GROUP_CHARACTER);
+        }
+        if (!moving) {
+            // recycled spatials may have moved since the control was created
+            platformPhysics.setPhysicsLocation(spatial.getWorldTranslation());
+            platformPhysics.setPhysicsRotation(spatial.getWorldRotation());
+        }
+        
         getPhysicsSpace().add(platformPhysics);
     }
     
     
+    /**
+     * Lets the character trigger the spatial without colliding with it,
+     * through the CollectableSensor if enabled, else with a GhostControl
+     */
     public void addGhost(Spatial spatial) {
+        if (sensor != null && spatial instanceof ICharacterContactHandler) {
+            addToSensor(spatial);
+            return;
+        }
+        
+        // reuse the control kept by removeFromPhysicsScene()
+        GhostControl existing = spatial.getControl(GhostControl.class);
+        if (existing != null) {
+            getPhysicsSpace().add(existing);
+            return;
+        }
+        
         CollisionShape cs = null;
         if (spatial instanceof ICollisionShapeProvider) {
             cs = ((ICollisionShapeProvider) spatial).getCollisionShape();
         }
         if (cs != null) {
             GhostControl gc = new GhostControl(cs);
+            gc.setCollisionGroup(GROUP_COLLECTABLE);
+            gc.setCollideWithGroups(GROUP_CHARACTER);
             spatial.addControl(gc);
             getPhysicsSpace().add(gc);
         }
     }
     
     
+    private void addToSensor(Spatial spatial) {
+        CollisionShape cs = null;
+        if (spatial instanceof ICollisionShapeProvider)
+            cs = ((ICollisionShapeProvider) spatial).getCollisionShape();
+        if (cs == null)
+            return;
+        
+        Vector3f center = spatial.getWorldTranslation();
+        float radius;
+        if (cs instanceof SphereCollisionShape) {
+            radius = ((SphereCollisionShape) cs).getRadius();
+        } else {
+            // around the bounding box, so larger than the shape
+            cs.getCShape().getBoundingSphere(boundsCenter, boundsRadius);
+            radius = boundsRadius[0];
+        }
+        sensor.add((ICharacterContactHandler) spatial, center, radius);
+    }
+    
+    
     public void removeFromPhysicsScene(Spatial spatial) {
+        removeFromPhysicsScene(spatial, false);
+    }
+    
+    
+    /**
+     * With keepControl set, the control stays on the spatial, so it can be
+     * reused by a later addToPhysicsScene() of the same (recycled) spatial
+     */
+    public void removeFromPhysicsScene(Spatial spatial, boolean keepControl) {
         if (spatial == null)
             return;
+        if (clusters != null && clusters.remove(spatial))
+            return;
+        if (sensor != null && spatial instanceof ICharacterContactHandler
+                && sensor.remove((ICharacterContactHandler) spatial))
+            return;
         
         RigidBodyControl rbc = spatial.getControl(RigidBodyControl.class);
         GhostControl gc = spatial.getControl(GhostControl.class);
@@ -144,7 +357,8 @@ public class WorldPhysicsManager {
         
         if (pc != null) {
             getPhysicsSpace().remove(pc);
-            spatial.removeControl(pc);
+            if (!keepControl)
+                spatial.removeControl(pc);
         }
     }
 }
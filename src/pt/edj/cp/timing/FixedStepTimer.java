@@ -0,0 +1,60 @@
+package pt.edj.cp.timing;
+
+import com.jme3.system.Timer;
+
+
+/**
+ * Timer for simulation runs: every frame advances the clock by exactly the
+ * same step, no matter how long the frame actually took.
+ */
+public class FixedStepTimer extends Timer {
+
+    private static final long RESOLUTION = 1000000000L;    // nanoseconds
+
+    private final float tpf;
+    private final long ticksPerFrame;
+    private long ticks = 0;
+
+
+    public FixedStepTimer(float tpf) {
+        this.tpf = tpf;
+        this.ticksPerFrame = (long) (tpf * RESOLUTION);
+    }
+
+
+    @Override
+    public long getTime() {
+        return ticks;
+    }
+
+
+    @Override
+    public long getResolution() {
+        return RESOLUTION;
+    }
+
+
+    @Override
+    public float getFrameRate() {
+        return 1.0f / tpf;
+    }
+
+
+    @Override
+    public float getTimePerFrame() {
+        return tpf;
+    }
+
+
+    @Override
+    public void update() {
+        ticks += ticksPerFrame;
+    }
+
+
+    @Override
+    public void reset() {
+        ticks = 0;
+    }
+
+}
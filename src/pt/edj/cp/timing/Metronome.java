@@ -16,6 +16,11 @@ public class Metronome extends AbstractEventSender {
     
     private long lastBeatTimestamp;
     private long lastBeatNr;
+    
+    // simulated clock, see useSimulatedClock()
+    private boolean simulated = false;
+    private double simulatedMs = 0.0;
+    private double nextBeatMs = 0.0;
 
     
     private static Metronome instance = new Metronome(); // * 4 (weil 16 beats pro takt)
@@ -40,9 +45,53 @@ public class Metronome extends AbstractEventSender {
     }
     
     
+    private synchronized long now() {
+        return simulated ? (long) simulatedMs : System.currentTimeMillis();
+    }
+    
+    
+    /**
+     * Stops the timer thread. From now on, time only passes through advance()
+     * and beats are sent from the thread calling it.
+     */
+    public synchronized void useSimulatedClock() {
+        if (simulated)
+            return;
+        
+        timer.cancel();
+        simulated = true;
+        simulatedMs = 0.0;
+        nextBeatMs = getMsPerBeat();
+        lastBeatTimestamp = 0;
+    }
+    
+    
+    /**
+     * Moves the simulated clock forward and sends the beats that fall into
+     * the step
+     */
+    public void advance(float seconds) {
+        while (true) {
+            synchronized (this) {
+                if (simulatedMs + seconds * 1000.0 < nextBeatMs) {
+                    simulatedMs += seconds * 1000.0;
+                    return;
+                }
+                
+                seconds -= (float) ((nextBeatMs - simulatedMs) / 1000.0);
+                simulatedMs = nextBeatMs;
+                nextBeatMs += getMsPerBeat();
+            }
+            
+            doBeat();
+            broadcast(new MetronomeBeatEvent());
+        }
+    }
+    
+    
     private synchronized void doBeat() {
         lastBeatNr++;
-        lastBeatTimestamp = System.currentTimeMillis();
+        lastBeatTimestamp = now();
         
         if (lastBeatNr % 16 == 0){
             broadcast(new NewBarEvent());
@@ -51,7 +100,7 @@ public class Metronome extends AbstractEventSender {
     
     
     public synchronized final float getCurrentBeat() {
-        long currTime = System.currentTimeMillis();
+        long currTime = now();
         int elapsed = (int) (currTime - lastBeatTimestamp);
         
         float relElapsed = Math.min(elapsed / getMsPerBeat(), 1.0f);
@@ -0,0 +1,104 @@
+package pt.edj.cp.util;
+
+
+/**
+ * Stateless, counter-based random numbers. Every value is a pure function of
+ * the seed, a 2D coordinate and a stream id (SplitMix64 mixing), so the same
+ * question always gets the same answer, no matter in which order or on which
+ * thread it is asked. Use different stream ids for independent decisions
+ * about the same coordinate.
+ *
+ * The static methods do the same for a single seed, typically one drawn with
+ * nextLong() for an object, which then makes its own decisions from it.
+ */
+public class HashRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+
+    public HashRandom(long seed) {
+        this.seed = mix(seed);
+    }
+
+
+    public long getSeed() {
+        return seed;
+    }
+
+
+    /**
+     * SplitMix64 finalizer
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+
+    public long nextLong(int x, int y, int stream) {
+        long h = mix(seed + GOLDEN_GAMMA * (x & 0xffffffffL));
+        h = mix(h + GOLDEN_GAMMA * (y & 0xffffffffL));
+        return nextLong(h, stream);
+    }
+
+
+    /**
+     * Uniform in [0, 1)
+     */
+    public float nextFloat(int x, int y, int stream) {
+        return toFloat(nextLong(x, y, stream));
+    }
+
+
+    /**
+     * Uniform in [0, bound)
+     */
+    public int nextInt(int x, int y, int stream, int bound) {
+        return toInt(nextLong(x, y, stream), bound);
+    }
+
+
+    public boolean nextBoolean(int x, int y, int stream) {
+        return nextLong(x, y, stream) < 0;
+    }
+
+
+    public static long nextLong(long seed, int stream) {
+        return mix(seed + GOLDEN_GAMMA * stream);
+    }
+
+
+    /**
+     * Uniform in [0, 1)
+     */
+    public static float nextFloat(long seed, int stream) {
+        return toFloat(nextLong(seed, stream));
+    }
+
+
+    /**
+     * Uniform in [0, bound)
+     */
+    public static int nextInt(long seed, int stream, int bound) {
+        return toInt(nextLong(seed, stream), bound);
+    }
+
+
+    public static boolean nextBoolean(long seed, int stream) {
+        return nextLong(seed, stream) < 0;
+    }
+
+
+    private static float toFloat(long bits) {
+        return (bits >>> 40) * 0x1.0p-24f;
+    }
+
+
+    private static int toInt(long bits, int bound) {
+        return (int) (((bits >>> 33) * bound) >>> 31);
+    }
+
+}
@@ -0,0 +1,21 @@
+package pt.edj.cp.util;
+
+
+public class IntMath {
+    
+    /**
+     * Modulo that is always in [0, b)
+     */
+    public static int posMod(int a, int b) {
+        return ((a % b) + b) % b;
+    }
+    
+    
+    /**
+     * Division rounding towards negative infinity
+     */
+    public static int floorDiv(int a, int b) {
+        return (a - posMod(a, b)) / b;
+    }
+    
+}
@@ -0,0 +1,172 @@
+package pt.edj.cp.util;
+
+import com.jme3.terrain.noise.basis.ImprovedNoise;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Cached 2D slice through ImprovedNoise at a fixed z.
+ *
+ * The plane is split into square tiles of TILE_SIZE x TILE_SIZE samples,
+ * spaced 1 / resolution apart. Tiles are filled lazily on a worker thread the
+ * first time they are needed and evicted least-recently-used. Lookups
+ * interpolate bilinearly between the samples; until a tile is ready, the
+ * noise is evaluated directly, so sample() never blocks.
+ *
+ * Because of that fallback, sample() returns slightly different values
+ * depending on the filler's progress. World generation must use
+ * sampleFilled() instead, which fills a missing tile on the calling thread.
+ *
+ * sample() and sampleFilled() are meant to be called from the render thread
+ * only.
+ */
+public class NoiseField {
+
+    private static final int TILE_SIZE = 32;
+
+    private static ExecutorService filler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "NoiseField");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+
+    private class Tile implements Runnable {
+        final int tx;
+        final int ty;
+        // one extra row and column, so interpolation never needs the neighbour
+        final float[] values = new float[(TILE_SIZE + 1) * (TILE_SIZE + 1)];
+        volatile boolean ready;
+
+        Tile(int tx, int ty) {
+            this.tx = tx;
+            this.ty = ty;
+        }
+
+        public synchronized void run() {
+            if (ready)
+                return;
+            for (int j = 0; j <= TILE_SIZE; j++) {
+                float y = (ty * TILE_SIZE + j) / resolution;
+                for (int i = 0; i <= TILE_SIZE; i++) {
+                    float x = (tx * TILE_SIZE + i) / resolution;
+                    values[j * (TILE_SIZE + 1) + i] = ImprovedNoise.noise(x, y, z);
+                }
+            }
+            ready = true;
+        }
+    }
+
+
+    private final float z;
+    private final float resolution;
+    private final LinkedHashMap<Long, Tile> tiles;
+    private Tile lastTile;
+
+    private long hits;
+    private long misses;
+
+
+    /**
+     * @param z             the noise slice
+     * @param resolution    samples per noise unit
+     * @param maxTiles      number of tiles kept before the least recently
+     *                      used ones are dropped
+     */
+    public NoiseField(float z, float resolution, final int maxTiles) {
+        this.z = z;
+        this.resolution = resolution;
+        this.tiles = new LinkedHashMap<Long, Tile>(2 * maxTiles, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+
+    private Tile getTile(int tx, int ty) {
+        if (lastTile != null && lastTile.tx == tx && lastTile.ty == ty)
+            return lastTile;
+
+        Long key = ((long) tx << 32) | (ty & 0xffffffffL);
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            tile = new Tile(tx, ty);
+            tiles.put(key, tile);
+            filler.execute(tile);
+        }
+
+        lastTile = tile;
+        return tile;
+    }
+
+
+    /**
+     * Approximately ImprovedNoise.noise(x, y, z)
+     */
+    public float sample(float x, float y) {
+        return sample(x, y, false);
+    }
+
+
+    /**
+     * Approximately ImprovedNoise.noise(x, y, z), always interpolated, so the
+     * result only depends on the position. Blocks while a tile is filled.
+     */
+    public float sampleFilled(float x, float y) {
+        return sample(x, y, true);
+    }
+
+
+    private float sample(float x, float y, boolean fill) {
+        float gx = x * resolution;
+        float gy = y * resolution;
+        int ix = (int) Math.floor(gx);
+        int iy = (int) Math.floor(gy);
+
+        int tx = IntMath.floorDiv(ix, TILE_SIZE);
+        int ty = IntMath.floorDiv(iy, TILE_SIZE);
+        Tile tile = getTile(tx, ty);
+
+        if (!tile.ready) {
+            misses++;
+            if (!fill)
+                return ImprovedNoise.noise(x, y, z);
+            // waits for the filler if it already started on this tile
+            tile.run();
+        } else {
+            hits++;
+        }
+
+        int i = ix - tx * TILE_SIZE;
+        int j = iy - ty * TILE_SIZE;
+        float fx = gx - ix;
+        float fy = gy - iy;
+
+        float[] v = tile.values;
+        int row = j * (TILE_SIZE + 1) + i;
+        float bottom = v[row] + fx * (v[row + 1] - v[row]);
+        row += TILE_SIZE + 1;
+        float top = v[row] + fx * (v[row + 1] - v[row]);
+        return bottom + fy * (top - bottom);
+    }
+
+
+    public long getHits() {
+        return hits;
+    }
+
+
+    public long getMisses() {
+        return misses;
+    }
+
+}
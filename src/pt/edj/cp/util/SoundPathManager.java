@@ -1,6 +1,8 @@
 package pt.edj.cp.util;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Random;
 import pt.edj.cp.timing.events.IEvent;
 import pt.edj.cp.timing.events.IEventListener;
@@ -30,12 +32,29 @@ public class SoundPathManager implements IEventListener{
     
 
     private Random rnd;
-    private int currSoundSet;
+    // changed on bar events, read when platforms are created
+    private volatile int currSoundSet;
     private int barCount;
     
+    // instrument directory listings, they do not change while running
+    private HashMap<String, String[]> instrumentFiles = new HashMap<String, String[]>();
+    
     
     public SoundPathManager(){
-        this.rnd = new Random();
+        this(new Random());
+    }
+    
+    
+    /**
+     * The sound sets change in the same order for the same seed
+     */
+    public SoundPathManager(long seed){
+        this(new Random(seed));
+    }
+    
+    
+    private SoundPathManager(Random rnd){
+        this.rnd = rnd;
         this.currSoundSet = getRndSoundSetKey();
         this.barCount = 1;
     }
@@ -47,11 +66,26 @@ public class SoundPathManager implements IEventListener{
     }
     
     
+    /*
+     * render thread only
+     */
     public String getRndInstrumentPath(String instrumentTypeKey){
-        File dir = new File(DIR_ASSETS + DIR_INSTR
-                + currSoundSet + "/" + instrumentTypeKey);
-        return DIR_INSTR + currSoundSet + "/"
-                + instrumentTypeKey + dir.list()[rnd.nextInt(dir.list().length)];
+        return getInstrumentPath(instrumentTypeKey, rnd.nextFloat());
+    }
+    
+    
+    /*
+     * picks the file by r in [0, 1) instead, render thread only
+     */
+    public String getInstrumentPath(String instrumentTypeKey, float r){
+        String path = DIR_INSTR + currSoundSet + "/" + instrumentTypeKey;
+        String[] files = instrumentFiles.get(path);
+        if (files == null) {
+            files = new File(DIR_ASSETS + path).list();
+            Arrays.sort(files);     // same order everywhere
+            instrumentFiles.put(path, files);
+        }
+        return path + files[(int) (r * files.length)];
     }
     
     
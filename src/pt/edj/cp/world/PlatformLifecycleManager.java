@@ -2,27 +2,52 @@ package pt.edj.cp.world;
 
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
-import com.jme3.terrain.noise.basis.ImprovedNoise;
-import java.util.Collection;
-import java.util.Random;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import pt.edj.cp.app.FrameProfilerState;
 import pt.edj.cp.app.IngameState;
 import pt.edj.cp.input.IMovementListener;
+import pt.edj.cp.physics.PlatformerCharacterControl;
+import pt.edj.cp.util.HashRandom;
+import pt.edj.cp.util.IntMath;
 import pt.edj.cp.world.items.Collectable;
 import pt.edj.cp.world.platforms.Platform;
+import pt.edj.cp.world.spawners.AbstractSpawner;
+import pt.edj.cp.world.spawners.ISpawner;
+import pt.edj.cp.world.spawners.RandomSpawner;
+import pt.edj.cp.world.spawners.RegionSpawner;
 
 
 public class PlatformLifecycleManager implements IMovementListener {
     
     private static final float ITEM_CHANCE_PER_PLATFORM = 0.2f;
     
-    private Random random = new Random();
+    // width of the band (in zones) around the total area whose zones are kept
+    // alive after leaving it, see setKeepAliveBand()
+    private static final int DEFAULT_KEEP_ALIVE_BAND = 2;
+    
+    // how far ahead (in seconds of movement) zones are prefetched
+    private static final float PREFETCH_TIME = 1.0f;
+    
+    // stream ids for the HashRandom, one per independent decision
+    private static final int STREAM_ITEM             = 1;
+    private static final int STREAM_PLATFORM_POS     = 2;     // x, y
+    private static final int STREAM_ITEM_POS         = 4;     // x, y, height
+    private static final int STREAM_ITEM_LOOK        = 17;    // 8-16: spawners
+    private static final int STREAM_PLATFORM_LOOK    = 18;
+    
+    // all world generation is a pure function of this and the zone position
+    private HashRandom random;
         
     private Vector2f zoneSize;
     private Vector2f halfActiveArea;
+    private Vector2f halfCollisionArea;
     private Vector2f halfTotalArea;
     
+    // velocity-predictive prefetch, see setPrefetchSource()
+    private PlatformerCharacterControl prefetchSource;
+    private Vector2f maxPrefetch;
+    
     private ISpawner platformSpawner;
     private ISpawner itemSpawner;
     
@@ -46,21 +71,34 @@ public class PlatformLifecycleManager implements IMovementListener {
     }
     
     
+    /**
+     * Callback for walking zone coordinates without allocating positions
+     */
+    private interface IPositionVisitor {
+        public void visit(int x, int y);
+    }
+    
+    
+    /**
+     * Callback for walking rectangles of zone coordinates
+     */
+    private interface IRectVisitor {
+        public void visit(int x1, int y1, int x2, int y2);
+    }
+    
+    
     /**
      * Used for zonemanagement
      */
     private static class IntRect implements Comparable<IntRect> {
-        public Position p1;
-        public Position p2;
+        public Position p1 = new Position(0, 0);
+        public Position p2 = new Position(0, 0);
         
-        private void addCol(Collection<Position> into, int x) {
-            for (int y = p1.y; y <= p2.y; y++)
-                into.add(new Position(x, y));
-        }
-        
-        private void addRow(Collection<Position> into, int y) {
-            for (int x = p1.x; x <= p2.x; x++)
-                into.add(new Position(x, y));
+        public void set(IntRect o) {
+            p1.x = o.p1.x;
+            p1.y = o.p1.y;
+            p2.x = o.p2.x;
+            p2.y = o.p2.y;
         }
         
         public int compareTo(IntRect o) {
@@ -69,310 +107,566 @@ public class PlatformLifecycleManager implements IMovementListener {
             return p2.compareTo(o.p2);
         }
         
-        // Returns all positions within this rect that are not included in the
-        // other one
-        public Iterable<Position> diff(IntRect other) {
-            TreeSet<Position> result = new TreeSet<Position>();
-            for (int x = p1.x; x < other.p1.x; x++) addCol(result, x);
-            for (int x = other.p2.x + 1; x <= p2.x; x++) addCol(result, x);
-            for (int y = p1.y; y < other.p1.y; y++) addRow(result, y);
-            for (int y = other.p2.y + 1; y <= p2.y; y++) addRow(result, y);
-            return result;
+        // Walks every strip of diffStrips() position by position
+        private static class StripWalker implements IRectVisitor {
+            IPositionVisitor target;
+            
+            public void visit(int x1, int y1, int x2, int y2) {
+                for (int x = x1; x <= x2; x++)
+                    for (int y = y1; y <= y2; y++)
+                        target.visit(x, y);
+            }
+        }
+        
+        private final StripWalker walker = new StripWalker();
+        
+        // Visits all positions within this rect that are not included in the
+        // other one, walking only the strips found by diffStrips(), so a
+        // shift by one zone costs one column or row
+        public void diff(IntRect other, IPositionVisitor visitor) {
+            walker.target = visitor;
+            diffStrips(other, walker);
+            walker.target = null;
+        }
+        
+        // Visits the positions of diff() as up to four disjoint strips: the
+        // columns left and right of the other rect, and the rows above and
+        // below it, clipped to the other rect's columns
+        public void diffStrips(IntRect other, IRectVisitor visitor) {
+            int lx2 = Math.min(p2.x, other.p1.x - 1);
+            int rx1 = Math.max(p1.x, other.p2.x + 1);
+            int mx1 = Math.max(p1.x, other.p1.x);
+            int mx2 = Math.min(p2.x, other.p2.x);
+            int by2 = Math.min(p2.y, other.p1.y - 1);
+            int ty1 = Math.max(p1.y, other.p2.y + 1);
+            
+            if (p1.x <= lx2)
+                visitor.visit(p1.x, p1.y, lx2, p2.y);
+            if (rx1 <= p2.x)
+                visitor.visit(rx1, p1.y, p2.x, p2.y);
+            if (mx1 <= mx2 && p1.y <= by2)
+                visitor.visit(mx1, p1.y, mx2, by2);
+            if (mx1 <= mx2 && ty1 <= p2.y)
+                visitor.visit(mx1, ty1, mx2, p2.y);
+        }
+    }
+    
+    
+    /**
+     * Fixed-size toroidal storage for all live zones. A zone at (x, y) lives
+     * in the cell (x mod width, y mod height), so as long as the grid is at
+     * least as large as the total area, no two live zones share a cell.
+     */
+    private static class ZoneGrid {
+        private final int width;
+        private final int height;
+        private final Zone[] cells;
+        
+        public ZoneGrid(int w, int h) {
+            width = w;
+            height = h;
+            cells = new Zone[w * h];
+        }
+        
+        private int index(int x, int y) {
+            return IntMath.posMod(y, height) * width + IntMath.posMod(x, width);
+        }
+        
+        public Zone get(int x, int y) {
+            Zone zone = cells[index(x, y)];
+            return (zone != null && zone.x == x && zone.y == y) ? zone : null;
+        }
+        
+        public void put(Zone zone) {
+            cells[index(zone.x, zone.y)] = zone;
+        }
+        
+        public Zone remove(int x, int y) {
+            int i = index(x, y);
+            Zone zone = cells[i];
+            if (zone == null || zone.x != x || zone.y != y)
+                return null;
+            cells[i] = null;
+            return zone;
+        }
+    }
+    
+    
+    /**
+     * Keeps zones that left the total area alive for a while, so they can be
+     * restored instantly when the player turns back. Bounded, the least
+     * recently parked zone is deleted when the pool is full.
+     */
+    private static class ZonePool {
+        private int capacity;
+        private LinkedHashMap<Long,Zone> parked = new LinkedHashMap<Long,Zone>();
+        
+        private long hits;
+        private long misses;
+        private long evictions;
+        
+        public ZonePool(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        private static long key(int x, int y) {
+            return ((long) x << 32) | (y & 0xffffffffL);
+        }
+        
+        public void park(Zone zone) {
+            parked.put(key(zone.x, zone.y), zone);
+            trim();
+        }
+        
+        public Zone restore(int x, int y) {
+            Zone zone = parked.isEmpty() ? null : parked.remove(key(x, y));
+            if (zone != null)
+                hits++;
+            else
+                misses++;
+            return zone;
         }
         
-        // returns all positions in this rectangle
-        public Iterable<Position> allPositions() {
-            TreeSet<Position> result = new TreeSet<Position>();
-            for (int x = p1.x; x <= p2.x; x++) addCol(result, x);
-            return result;
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+            trim();
+        }
+        
+        // deletes the oldest zones until the pool fits its capacity
+        private void trim() {
+            Iterator<Zone> it = parked.values().iterator();
+            while (parked.size() > capacity) {
+                Zone oldest = it.next();
+                it.remove();
+                oldest.delete();
+                evictions++;
+            }
+        }
+        
+        public void clear() {
+            for (Zone zone : parked.values())
+                zone.delete();
+            parked.clear();
+        }
+    }
+    
+    
+    /**
+     * Streams the platform of a zone in and out of the scene
+     */
+    private class PlatformRequest extends ZoneStreamer.Request<Platform> {
+        private Zone zone;
+        private Vector3f position;
+        private long seed;
+        private String samplePath;
+        private float[] chord;
+        
+        /**
+         * Picks sample and chord right away, they are render thread state
+         */
+        public PlatformRequest(Zone zone, Vector3f position, long seed) {
+            this.zone = zone;
+            this.position = position;
+            this.seed = seed;
+            this.samplePath = ingameState.choosePlatformSample(seed);
+            this.chord = ingameState.getChordController().getCurrentChord();
+        }
+        
+        protected Platform prepare() {
+            return ingameState.createPlatform(position, seed, samplePath, chord);
+        }
+        
+        @Override
+        protected void discard(Platform platform) {
+            ingameState.discardPlatform(platform);
+        }
+        
+        protected void attach(Platform platform) {
+            ingameState.addPlatform(platform);
+            if (zone.resident)
+                ingameState.setPlatformResident(platform, true);
+        }
+        
+        protected void detach(Platform platform) {
+            if (zone.resident)
+                ingameState.setPlatformResident(platform, false);
+            ingameState.removePlatform(platform);
+        }
+    }
+    
+    
+    /**
+     * Streams the collectable of a zone in and out of the scene
+     */
+    private class CollectableRequest extends ZoneStreamer.Request<Collectable> {
+        private Zone zone;
+        private Vector3f position;
+        private long seed;
+        
+        public CollectableRequest(Zone zone, Vector3f position, long seed) {
+            this.zone = zone;
+            this.position = position;
+            this.seed = seed;
+        }
+        
+        protected Collectable prepare() {
+            return ingameState.createCollectable(position, seed);
+        }
+        
+        protected void attach(Collectable collectable) {
+            ingameState.addCollectable(collectable);
+            if (zone.resident)
+                ingameState.setCollectableResident(collectable, true);
+        }
+        
+        protected void detach(Collectable collectable) {
+            if (zone.resident)
+                ingameState.setCollectableResident(collectable, false);
+            ingameState.removeCollectable(collectable);
         }
     }
     
     
     /**
      * Basic spatial units to decide on platform creation, placement and
-     * destruction
+     * destruction. The spawn decision is made right away, the platform itself
+     * is streamed in by the ZoneStreamer. Only resident zones, those in the
+     * collision area, have their platform and collectable in the physics
+     * space.
      */
     private class Zone extends Position {
-        public Platform platform;
-        public Collectable collectable;
+        public PlatformRequest platform;
+        public CollectableRequest collectable;
+        public boolean resident = false;
         
-        public Zone(Position p) {
-            super(p.x, p.y);
+        public Zone(int xx, int yy, boolean spawn) {
+            super(xx, yy);
             
-            if (platformSpawner.shouldPlacePlatform(p)) {
-                platform = ingameState.addPlatform(generatePlatformPosition(p, false));
+            if (spawn) {
+                platform = new PlatformRequest(this, generatePlatformPosition(this, false),
+                                               random.nextLong(x, y, STREAM_PLATFORM_LOOK));
+                streamer.submit(platform);
                 
-                collectable = (random.nextFloat() < ITEM_CHANCE_PER_PLATFORM)
-                            ? ingameState.addCollectable(generatePlatformPosition(p, true))
-                            : null;
+                if (random.nextFloat(x, y, STREAM_ITEM) < ITEM_CHANCE_PER_PLATFORM) {
+                    collectable = new CollectableRequest(this, generatePlatformPosition(this, true),
+                                                         random.nextLong(x, y, STREAM_ITEM_LOOK));
+                    streamer.submit(collectable);
+                } else {
+                    collectable = null;
+                }
             } else {
                 platform = null;
                 collectable = null;
             }
         }
         
+        public void setResident(boolean resident) {
+            if (this.resident == resident)
+                return;
+            this.resident = resident;
+            residentZones += resident ? 1 : -1;
+            
+            // not streamed in yet: attach() checks the flag
+            if (platform != null && platform.get() != null)
+                ingameState.setPlatformResident(platform.get(), resident);
+            if (collectable != null && collectable.get() != null)
+                ingameState.setCollectableResident(collectable.get(), resident);
+        }
+        
         public void delete() {
-            if (platform != null)
-                ingameState.removePlatform(platform);
-            if (collectable != null)
-                ingameState.removeCollectable(collectable);
+            streamer.cancel(platform);
+            streamer.cancel(collectable);
         }
     }
 
     
-    private IntRect getActiveZonesForPosition(Vector2f playerPos, Vector2f area) {
-        Vector2f p1 = playerPos.subtract(area);
-        Vector2f p2 = playerPos.add(area);
-        
+    private IntRect getActiveZonesForPosition(float px, float py, Vector2f area, IntRect result) {
+        return getZonesForArea(px, py, area, 0.0f, 0.0f, result);
+    }
+    
+    
+    // Returns all zones within the area around the given position, extended
+    // by (ex, ey) in the direction of their signs
+    private IntRect getZonesForArea(float px, float py, Vector2f area, float ex, float ey, IntRect result) {
         float sx = zoneSize.x;
         float sy = zoneSize.y;
         
-        IntRect result = new IntRect();
-        result.p1 = new Position((int) Math.floor(p1.x / sx), (int) Math.floor(p1.y / sy));
-        result.p2 = new Position((int) Math.ceil(p2.x / sx), (int) Math.ceil(p2.y / sy));
+        result.p1.x = (int) Math.floor((px - area.x + Math.min(ex, 0.0f)) / sx);
+        result.p1.y = (int) Math.floor((py - area.y + Math.min(ey, 0.0f)) / sy);
+        result.p2.x = (int) Math.ceil((px + area.x + Math.max(ex, 0.0f)) / sx);
+        result.p2.y = (int) Math.ceil((py + area.y + Math.max(ey, 0.0f)) / sy);
         return result;
-    } 
+    }
+    
+    
+    // Returns the total area, skewed towards where the player will be in
+    // PREFETCH_TIME seconds. The extension is snapped to whole zones, so
+    // small velocity changes don't make the total area flicker.
+    private IntRect getTotalZonesForPosition(float px, float py, IntRect result) {
+        float ex = 0.0f;
+        float ey = 0.0f;
+        
+        if (prefetchSource != null) {
+            Vector3f velocity = prefetchSource.getVelocity();
+            ex = prefetchExtent(velocity.x * PREFETCH_TIME, maxPrefetch.x, zoneSize.x);
+            ey = prefetchExtent(velocity.y * PREFETCH_TIME, maxPrefetch.y, zoneSize.y);
+        }
+        
+        return getZonesForArea(px, py, halfTotalArea, ex, ey, result);
+    }
+    
+    
+    private static float prefetchExtent(float distance, float max, float size) {
+        float clamped = Math.min(Math.abs(distance), max);
+        return Math.signum(distance) * size * (float) Math.floor(clamped / size);
+    }
+    
+    
+    private ZoneGrid zones;
+    private ZonePool pool;
+    private int gridWidth;
+    private int gridHeight;
+    private ZoneStreamer streamer = new ZoneStreamer();
+    
+    private IntRect totalZones = new IntRect();
+    private IntRect activeZones = new IntRect();
+    private IntRect collisionZones = new IntRect();
+    private IntRect newZones = new IntRect();
+    private IntRect newCollisionZones = new IntRect();
     
+    // spawner results for one strip of new zones
+    private long[] spawnBits;
     
-    private TreeMap<Position,Zone> zones = new TreeMap<Position,Zone>();
+    // zone churn
+    private long zonesEntered = 0;
+    private long zonesLeft = 0;
+    private int residentZones = 0;
     
-    private IntRect totalZones;
-    private IntRect activeZones;
+    private final IRectVisitor createZones = new IRectVisitor() {
+        public void visit(int x1, int y1, int x2, int y2) {
+            int w = x2 - x1 + 1;
+            spawnBits = platformSpawner.shouldPlacePlatforms(x1, y1, x2, y2, spawnBits);
+            
+            for (int y = y1; y <= y2; y++) {
+                for (int x = x1; x <= x2; x++) {
+                    zonesEntered++;
+                    Zone zone = pool.restore(x, y);
+                    if (zone == null)
+                        zone = new Zone(x, y, AbstractSpawner.isSet(spawnBits, (y - y1) * w + (x - x1)));
+                    zones.put(zone);
+                }
+            }
+        }
+    };
+    
+    private final IPositionVisitor deleteZone = new IPositionVisitor() {
+        public void visit(int x, int y) {
+            Zone zone = zones.remove(x, y);
+            if (zone != null) {
+                zonesLeft++;
+                pool.park(zone);
+            }
+        }
+    };
+    
+    private final IPositionVisitor admitZone = new IPositionVisitor() {
+        public void visit(int x, int y) {
+            Zone zone = zones.get(x, y);
+            if (zone != null)
+                zone.setResident(true);
+        }
+    };
+    
+    private final IPositionVisitor evictZone = new IPositionVisitor() {
+        public void visit(int x, int y) {
+            Zone zone = zones.get(x, y);
+            if (zone != null)
+                zone.setResident(false);
+        }
+    };
+    
+    private final IPositionVisitor deactivateZone = new IPositionVisitor() {
+        public void visit(int x, int y) {
+            Zone zone = zones.get(x, y);
+            if (zone != null && zone.platform != null && zone.platform.get() != null)
+                zone.platform.get().setActive(false);
+        }
+    };
     
     IngameState ingameState; 
     
     
-    public PlatformLifecycleManager(IngameState ingame, Vector2f zoneSize, Vector2f activeArea, Vector2f totalArea) {
+    public PlatformLifecycleManager(IngameState ingame, Vector2f zoneSize, Vector2f activeArea,
+                                    Vector2f collisionArea, Vector2f totalArea) {
+        this(ingame, zoneSize, activeArea, collisionArea, totalArea, System.nanoTime());
+    }
+    
+    
+    /**
+     * Zones in the total area are streamed in and shown, only those in the
+     * smaller collision area around the player also get physics bodies. It
+     * must cover everything the character can reach until the next
+     * movement event.
+     */
+    public PlatformLifecycleManager(IngameState ingame, Vector2f zoneSize, Vector2f activeArea,
+                                    Vector2f collisionArea, Vector2f totalArea, long seed) {
+        this.random = new HashRandom(seed);
         this.zoneSize = zoneSize;
         this.halfActiveArea = activeArea.mult(0.5f);
+        this.halfCollisionArea = collisionArea.mult(0.5f);
         this.halfTotalArea = totalArea.mult(0.5f);
+        this.maxPrefetch = halfTotalArea.clone();
         
         this.ingameState = ingame;
         
-        this.platformSpawner = new RegionSpawner();
-        this.itemSpawner = new RandomSpawner(0.15f, platformSpawner);
+        this.platformSpawner = new RegionSpawner(random);
+        this.itemSpawner = new RandomSpawner(random, 0.15f, platformSpawner);
         
-        // add initial zones around player
-        activeZones = getActiveZonesForPosition(new Vector2f(0.0f, 0.0f), halfActiveArea);
-        totalZones = getActiveZonesForPosition(new Vector2f(0.0f, 0.0f), halfTotalArea);
+        // the total area never spans more than ceil(size / zoneSize) + 2 zones
+        // per axis, see getZonesForArea(), plus the prefetch extension
+        gridWidth = (int) Math.ceil((totalArea.x + maxPrefetch.x) / zoneSize.x) + 2;
+        gridHeight = (int) Math.ceil((totalArea.y + maxPrefetch.y) / zoneSize.y) + 2;
+        zones = new ZoneGrid(gridWidth, gridHeight);
+        spawnBits = new long[(gridWidth * gridHeight + 63) / 64];
+        pool = new ZonePool(0);
+        setKeepAliveBand(DEFAULT_KEEP_ALIVE_BAND);
         
-        for (Position pos : totalZones.allPositions()) {
-            zones.put(pos, new Zone(pos));
-        }
+        // add initial zones around player
+        getActiveZonesForPosition(0.0f, 0.0f, halfActiveArea, activeZones);
+        getActiveZonesForPosition(0.0f, 0.0f, halfTotalArea, totalZones);
+        createZones.visit(totalZones.p1.x, totalZones.p1.y, totalZones.p2.x, totalZones.p2.y);
+        getActiveZonesForPosition(0.0f, 0.0f, halfCollisionArea, collisionZones);
+        for (int y = collisionZones.p1.y; y <= collisionZones.p2.y; y++)
+            for (int x = collisionZones.p1.x; x <= collisionZones.p2.x; x++)
+                admitZone.visit(x, y);
     }
     
     
     public void movement(Vector3f newPosition, Vector3f delta) {
-        Vector2f playerPos = new Vector2f(newPosition.x, newPosition.y);
-        IntRect newTotalZones = getActiveZonesForPosition(playerPos, halfTotalArea);
+        long start = FrameProfilerState.begin();
+        
+        // zones are evicted from physics before they can be parked, and
+        // admitted once the new ones exist
+        getActiveZonesForPosition(newPosition.x, newPosition.y, halfCollisionArea, newCollisionZones);
+        boolean collisionMoved = collisionZones.compareTo(newCollisionZones) != 0;
+        if (collisionMoved)
+            collisionZones.diff(newCollisionZones, evictZone);
         
-        if (totalZones.compareTo(newTotalZones) != 0) {
+        getTotalZonesForPosition(newPosition.x, newPosition.y, newZones);
+        
+        if (totalZones.compareTo(newZones) != 0) {
             // see if we have to delete old zones
-            for (Position pos : totalZones.diff(newTotalZones)) {
-                zones.remove(pos).delete();
-            }
+            totalZones.diff(newZones, deleteZone);
 
             // add new zones?
-            for (Position pos : newTotalZones.diff(totalZones)) {
-                zones.put(pos, new Zone(pos));
-            }
+            newZones.diffStrips(totalZones, createZones);
 
-            totalZones = newTotalZones;
+            totalZones.set(newZones);
         }
         
+        if (collisionMoved) {
+            newCollisionZones.diff(collisionZones, admitZone);
+            collisionZones.set(newCollisionZones);
+        }
         
-        IntRect newActiveZones = getActiveZonesForPosition(playerPos, halfActiveArea);
-        if (activeZones.compareTo(newActiveZones) != 0) {
-            for (Position pos : activeZones.diff(newActiveZones)) {
-                Zone zone = zones.get(pos);
-                if (zone != null && zone.platform != null)
-                    zone.platform.setActive(false);
-            }
-            activeZones = newActiveZones;
+        
+        getActiveZonesForPosition(newPosition.x, newPosition.y, halfActiveArea, newZones);
+        if (activeZones.compareTo(newZones) != 0) {
+            activeZones.diff(newZones, deactivateZone);
+            activeZones.set(newZones);
         }
+        
+        FrameProfilerState.end(FrameProfilerState.MOVEMENT, start);
     }
     
-    Vector3f generatePlatformPosition(Position zonePosition, boolean powerup) {
-        float maxDiff = 0.15f;
-        float x = (zonePosition.x + maxDiff * (2 * random.nextFloat() - 1)) * zoneSize.x;
-        float y = (zonePosition.y + maxDiff * (2 * random.nextFloat() - 1)) * zoneSize.y;
-        if (powerup)
-            y += 1.5f + random.nextFloat();
-        return new Vector3f(x, y, 0.0f);
+    /**
+     * Enables velocity-predictive prefetching: the total area is extended
+     * ahead of the character, so zones are already streamed in when the
+     * player reaches them. Zones that were prefetched in one direction are
+     * dropped again like any other zone once the player turns around.
+     */
+    public void setPrefetchSource(PlatformerCharacterControl character) {
+        prefetchSource = character;
     }
     
     
     /**
-     * Decide whether or not to place a new platform at the given spot
+     * Zones that leave the total area are parked instead of being deleted
+     * right away. The pool holds as many zones as fit into a band of the
+     * given width (in zones) around the total area, 0 disables parking.
      */
-    private interface ISpawner {
-        public boolean shouldPlacePlatform(Position zonePosition);
+    public void setKeepAliveBand(int band) {
+        int w = gridWidth + 2 * band;
+        int h = gridHeight + 2 * band;
+        pool.setCapacity(w * h - gridWidth * gridHeight);
+    }
+    
+    
+    public long getPoolHits() {
+        return pool.hits;
+    }
+    
+    
+    public long getPoolMisses() {
+        return pool.misses;
     }
     
+    
+    public long getPoolEvictions() {
+        return pool.evictions;
+    }
+    
+    
     /**
-     * Use random choice to make choice for each zone
+     * Number of zones that entered the total area, including the initial ones
      */
-    private class RandomSpawner implements ISpawner {
-        private float threshold;
-        private ISpawner other;
-        
-        public RandomSpawner(float th) {
-            this(th, null);
-        }
-        
-        public RandomSpawner(float th, ISpawner o) {
-            threshold = th;
-            other = o;
-        }
-        
-        public boolean shouldPlacePlatform(Position zonePosition) {
-            boolean should = (other != null) ? other.shouldPlacePlatform(zonePosition) : true;
-            return should && (random.nextFloat() < threshold);
-        }
+    public long getZonesEntered() {
+        return zonesEntered;
+    }
+    
+    
+    public long getZonesLeft() {
+        return zonesLeft;
     }
     
+    
     /**
-     * Use noise to create more cluster-like platform density
+     * Zones in the collision area, whose objects are in the physics space
      */
-    private class NoiseSpawner implements ISpawner {
-        float stretch;
-        private float threshold;
-        
-        public NoiseSpawner(float stretch, float th) {
-            this.stretch = stretch;
-            this.threshold = th;
-        }
-        
-        public boolean shouldPlacePlatform(Position zonePosition) {
-            float v = ImprovedNoise.noise(zonePosition.x / stretch, zonePosition.y / stretch, 0.0f);
-            return (v + 0.5f) < threshold;
-        }
+    public int getResidentZones() {
+        return residentZones;
+    }
+    
+    
+    public float getPoolHitRate() {
+        long total = pool.hits + pool.misses;
+        return (total > 0) ? (float) pool.hits / total : 0.0f;
     }
     
+    
     /**
-     * Generate horizontal platform lines
+     * Attaches platforms that finished streaming in, called once per frame
      */
-    private class HorizontalSpawner implements ISpawner {
-        public boolean shouldPlacePlatform(Position zonePosition) {
-            // get y-dependent spacing
-            Random yRand = new Random(zonePosition.y);
-            int period = 30 + yRand.nextInt(10);
-            int offset = yRand.nextInt(period);
-            
-            // get x-dependent length
-            int number = (zonePosition.x - offset) / period;
-            Random xRand = new Random(zonePosition.y + number);
-            int length = 10 + xRand.nextInt(6);
-            
-            int within = (zonePosition.x - offset) % period;
-            within = (within + period) % period;
-            return within < length;
-        }
+    public void update(float tpf) {
+        streamer.update();
     }
     
     
-    private static class RegionSpawner implements ISpawner {
-        private static final int regionSizeX = 4;
-        private static final int regionSizeY = 3;
-            
-        static int posMod(int a, int b) {
-            return ((a % b) + b) % b;
-        }
-
-        public RegionSpawner() {
-        }
-        
-        private class Region {
-            int x;
-            int y;
-            int within;
-            int segmentLen;
-            boolean exists;
-            boolean connectionUp;
-            
-            public Region(Position pos) {
-                this((int) Math.floor((float) pos.x / regionSizeX),
-                        (int) Math.floor((float) pos.y / regionSizeY));
-            }
-            
-            public Region(int xx, int yy) {
-                x = xx;
-                y = yy;
-                
-                // get y-dependent spacing
-                Random yRand = new Random(6243327 * y);
-                float period = 4.5f + 2.f * yRand.nextFloat();
-                int offset = yRand.nextInt((int) period);
-
-                // get x-dependent length
-                int number = (int) Math.floor((x - offset) / period);
-                Random xRand = new Random(6243327 * y + 14327 * number);
-                segmentLen = 2 + xRand.nextInt((int)period - 2);
-                
-                // within slice:
-                within = (int) (x - offset - number * period);
-                exists = (within < segmentLen);
-                connectionUp = xRand.nextBoolean();
-            }
-            
-            Region neighbor(int dx, int dy) {
-                return new Region(x + dx, y + dy);
-            }
-            
-            boolean hasLeft() {
-                return within > 0;
-            }
-            
-            boolean hasRight() {
-                return within < (segmentLen-1);
-            }
-            
-            boolean hasVerticalConnection() {
-                if (!exists)
-                    return false;
-                
-                Region other = connectionUp ? new Region(x, y+1) : new Region(x, y-1);
-                if (!other.exists || other.connectionUp == connectionUp)
-                    return false;
-                
-                return true;
-            }
-        }
-
-        public boolean shouldPlacePlatform(Position zonePosition) {
-            Region thisRegion = new Region(zonePosition);
-            
-            if (!thisRegion.exists)
-                return false;
-            
-            int relX = posMod(zonePosition.x, regionSizeX);
-            int relY = posMod(zonePosition.y, regionSizeY);
-            
-            // is this coordinate on the slide of this (existing) region?
-            if (relY == 1) {
-                if (thisRegion.hasLeft() && relX < 3
-                        || thisRegion.hasRight() && relX > 0
-                        || relX > 0 && relX < 3)
-                    return true;
-                return true;
-            }
-            
-            // is there a connection to another plaform?
-            if (thisRegion.hasVerticalConnection()) {
-                boolean goesUp = thisRegion.connectionUp;
-                boolean goesLeft = thisRegion.y % 2 == 0;
-                        
-                // generate ladder position
-                int y = goesUp ? 2 : 0;
-                int x = goesLeft ? 1 : 2;
-                if (relX == x && relY == y)
-                    return true;
-            }
-            
-            
-            return false;
-        }
-        
+    public void destroy() {
+        pool.clear();
+        streamer.destroy();
+    }
+    
+    
+    Vector3f generatePlatformPosition(Position zonePosition, boolean powerup) {
+        float maxDiff = 0.15f;
+        int zx = zonePosition.x;
+        int zy = zonePosition.y;
+        int stream = powerup ? STREAM_ITEM_POS : STREAM_PLATFORM_POS;
+        float x = (zx + maxDiff * (2 * random.nextFloat(zx, zy, stream) - 1)) * zoneSize.x;
+        float y = (zy + maxDiff * (2 * random.nextFloat(zx, zy, stream + 1) - 1)) * zoneSize.y;
+        if (powerup)
+            y += 1.5f + random.nextFloat(zx, zy, stream + 2);
+        return new Vector3f(x, y, 0.0f);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package pt.edj.cp.world;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Moves the expensive part of zone creation out of the movement callback.
+ *
+ * Objects are streamed in three stages: the zone decides synchronously what
+ * to spawn and submits a Request, the CPU-side construction (meshes,
+ * materials, audio data) runs on a worker pool, and the finished objects are
+ * attached to the scene graph and physics space from update() on the render
+ * thread, within a fixed time budget per frame.
+ */
+public class ZoneStreamer {
+
+    private static final Logger logger = Logger.getLogger(ZoneStreamer.class.getName());
+
+    private static final int WORKER_THREADS = 2;
+    private static final long ATTACH_BUDGET_NS = 2000000L;     // 2 ms
+
+
+    /**
+     * One streamed object. prepare() runs on a worker thread and must not touch
+     * the scene graph, attach() and detach() always run on the render thread.
+     */
+    public static abstract class Request<T> implements Runnable {
+        private ZoneStreamer streamer;
+        private volatile T prepared;
+        private volatile boolean cancelled;
+        private T attached;
+
+        protected abstract T prepare();
+
+        protected abstract void attach(T object);
+
+        protected abstract void detach(T object);
+
+        /**
+         * Called on the render thread for objects that were prepared, but
+         * cancelled before they could be attached
+         */
+        protected void discard(T object) {
+        }
+
+        /**
+         * Returns the object once it has been attached, null before that
+         */
+        public final T get() {
+            return attached;
+        }
+
+        public final void run() {
+            if (!cancelled) {
+                try {
+                    prepared = prepare();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to prepare streamed object", e);
+                }
+            }
+            streamer.ready.add(this);
+        }
+
+        private void finish() {
+            T object = prepared;
+            prepared = null;
+
+            if (object == null)
+                return;
+
+            if (cancelled) {
+                discard(object);
+            } else {
+                attach(object);
+                attached = object;
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (attached != null) {
+                detach(attached);
+                attached = null;
+            }
+        }
+    }
+
+
+    private ExecutorService workers;
+    private ConcurrentLinkedQueue<Request<?>> ready = new ConcurrentLinkedQueue<Request<?>>();
+
+
+    public ZoneStreamer() {
+        workers = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactory() {
+            private int count = 0;
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ZoneStreamer-" + (count++));
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+
+    public void submit(Request<?> request) {
+        request.streamer = this;
+        workers.execute(request);
+    }
+
+
+    /**
+     * Drops a request. If its object is already attached, it is detached
+     * immediately, otherwise it is discarded once the worker is done with it.
+     */
+    public void cancel(Request<?> request) {
+        if (request != null)
+            request.cancel();
+    }
+
+
+    /**
+     * Attaches finished objects, to be called once per frame on the render
+     * thread. At least one object is attached per call, more while the frame
+     * budget allows it.
+     */
+    public void update() {
+        long deadline = System.nanoTime() + ATTACH_BUDGET_NS;
+
+        Request<?> request;
+        while ((request = ready.poll()) != null) {
+            request.finish();
+            if (System.nanoTime() > deadline)
+                break;
+        }
+    }
+
+
+    public void destroy() {
+        workers.shutdownNow();
+        ready.clear();
+    }
+}
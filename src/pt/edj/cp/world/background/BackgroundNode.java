@@ -7,6 +7,7 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import java.util.HashMap;
+import pt.edj.cp.app.FrameProfilerState;
 import pt.edj.cp.input.IMovementListener;
 import pt.edj.cp.timing.events.IEvent;
 import pt.edj.cp.timing.events.IEventListener;
@@ -51,12 +52,15 @@ public class BackgroundNode extends Node implements IEventListener, IMovementLis
 
     
     public void movement(Vector3f newPosition, Vector3f delta) {
+        long start = FrameProfilerState.begin();
         setLocalTranslation(newPosition);
         
         for (AbstractBackgroundLayer layer : layers.keySet()) {
             float z = layers.get(layer);
             layer.shiftLayer(delta.negate());
         }
+        
+        FrameProfilerState.end(FrameProfilerState.BACKGROUND, start);
     }
     
 }
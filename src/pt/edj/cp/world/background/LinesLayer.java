@@ -11,13 +11,14 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.control.AbstractControl;
-import com.jme3.terrain.noise.basis.ImprovedNoise;
 import java.nio.FloatBuffer;
 import java.util.LinkedList;
 import java.util.Random;
+import pt.edj.cp.app.FrameProfilerState;
 import pt.edj.cp.timing.events.IEvent;
 import pt.edj.cp.timing.events.ThemeParameterUpdate;
 import pt.edj.cp.util.ColorHelper;
+import pt.edj.cp.util.NoiseField;
 
 /**
  *
@@ -38,6 +39,11 @@ public class LinesLayer extends AbstractBackgroundLayer {
     private float paramSpeed;
     private float paramTemp;
     
+    // shared by all lines, each of them walks along its own row. Lines used
+    // to take their own random z slice of ImprovedNoise (its permutation is
+    // fixed, init() does nothing), now they share one random slice.
+    private NoiseField noise;
+    
     
     public LinesLayer(Application app, float z, int numLines, float sx, float sy) {
         super(app, z, 0.1f);
@@ -52,6 +58,7 @@ public class LinesLayer extends AbstractBackgroundLayer {
         this.numLines = numLines;
         this.lines = new LinkedList<Line>();
         this.random = new Random();
+        this.noise = new NoiseField(random.nextFloat() * 10, 8.0f, 64);
 
         for (int i = 0; i < numLines; i++)
             addLine();
@@ -112,9 +119,7 @@ public class LinesLayer extends AbstractBackgroundLayer {
         private Vector3f currPos;
         private float currAngle;
 
-        private ImprovedNoise noise;
         private float noiseY;
-        private float noiseZ;
         
         private float baseHue;
         private float huePeriodTime;
@@ -125,10 +130,7 @@ public class LinesLayer extends AbstractBackgroundLayer {
             maxSegments = segs;
             segLength = (float) Math.sqrt(maxX * maxY) * 0.01f;
 
-            noise = new ImprovedNoise();
-            noise.init();
             noiseY = rnd.nextFloat() * 10;
-            noiseZ = rnd.nextFloat() * 10;
             baseHue = rnd.nextFloat();
             huePeriodTime = 30.f + 20.f * rnd.nextFloat();
 
@@ -215,7 +217,7 @@ public class LinesLayer extends AbstractBackgroundLayer {
                 }
                 // change angle using noise - make sure to slightly head for center always
                 else {
-                    float dAngle = noise.value(alternating * currLength, noiseY, noiseZ);
+                    float dAngle = noise.sample(alternating * currLength, noiseY);
                     dAngle *= (1.0f - outsideness*5.0f);
                     
                     currAngle += maxAngleChange * dAngle;
@@ -275,6 +277,7 @@ public class LinesLayer extends AbstractBackgroundLayer {
 
     private class UpdateControl extends AbstractControl {
         protected void controlUpdate(float tpf) {
+            long start = FrameProfilerState.begin();
             float sps = getSegmentsPerSecond();
             currSegment += sps * tpf;
             int minimumSegmentsAvailable = (int) (0.25*sps + 1);
@@ -287,6 +290,8 @@ public class LinesLayer extends AbstractBackgroundLayer {
                 line.updateCurrSegment();
                 line.updateColor(tpf);
             }
+            
+            FrameProfilerState.end(FrameProfilerState.BACKGROUND, start);
         }
 
         protected void controlRender(RenderManager rm, ViewPort vp) {
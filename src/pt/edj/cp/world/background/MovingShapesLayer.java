@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Random;
+import pt.edj.cp.app.FrameProfilerState;
 import pt.edj.cp.timing.GameThemeController;
 import pt.edj.cp.timing.events.IEvent;
 import pt.edj.cp.timing.events.ThemeParameterUpdate;
@@ -245,6 +246,7 @@ public class MovingShapesLayer extends AbstractBackgroundLayer {
     class UpdateRTTControl extends AbstractControl {
 
         protected void controlUpdate(float tpf) {
+            long start = FrameProfilerState.begin();
             LinkedList<Shape> toDelete = new LinkedList<Shape>();
             
             float speed = tpf * getMovingSpeed();
@@ -262,6 +264,8 @@ public class MovingShapesLayer extends AbstractBackgroundLayer {
             }
             
             rttScene.updateGeometricState();
+            
+            FrameProfilerState.end(FrameProfilerState.BACKGROUND, start);
         }
 
         protected void controlRender(RenderManager rm, ViewPort vp) {
@@ -2,12 +2,12 @@ package pt.edj.cp.world.items;
 
 import com.jme3.app.SimpleApplication;
 import com.jme3.bullet.collision.shapes.CollisionShape;
-import com.jme3.bullet.collision.shapes.SphereCollisionShape;
 import com.jme3.material.Material;
 import com.jme3.material.RenderState;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.shape.Quad;
+import pt.edj.cp.physics.CollisionShapeCache;
 
 
 public abstract class AlphaRectCollectable extends Collectable {
@@ -29,6 +29,6 @@ public abstract class AlphaRectCollectable extends Collectable {
     }
     
     public CollisionShape getCollisionShape() {
-        return new SphereCollisionShape(radius);
+        return CollisionShapeCache.getSphere(radius);
     }
 }
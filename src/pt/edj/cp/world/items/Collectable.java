@@ -2,11 +2,12 @@ package pt.edj.cp.world.items;
 
 import com.jme3.bullet.control.GhostControl;
 import com.jme3.scene.Node;
+import pt.edj.cp.physics.ICharacterContactHandler;
 import pt.edj.cp.physics.ICollisionShapeProvider;
 import pt.edj.cp.timing.events.IEventListener;
 
 
-public abstract class Collectable extends Node implements ICollisionShapeProvider, IEventListener {
+public abstract class Collectable extends Node implements ICollisionShapeProvider, ICharacterContactHandler, IEventListener {
     
     private boolean collected;
     
@@ -22,10 +23,21 @@ public abstract class Collectable extends Node implements ICollisionShapeProvide
         collected = true;
         this.setCullHint(CullHint.Always);
         
-        getControl(GhostControl.class).setEnabled(false);
+        // only set when collectables are not handled by a CollectableSensor
+        GhostControl ghost = getControl(GhostControl.class);
+        if (ghost != null)
+            ghost.setEnabled(false);
         
         effect();
     }
     
+    public boolean isCollected() {
+        return collected;
+    }
+    
+    public void characterContact() {
+        collect();
+    }
+    
     protected abstract void effect();
 }
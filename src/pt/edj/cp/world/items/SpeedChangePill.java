@@ -9,11 +9,13 @@ import pt.edj.cp.timing.events.IEvent;
 public class SpeedChangePill extends AlphaRectCollectable {
     
     private boolean increaseSpeed;
+    private float strength;
     
-    public SpeedChangePill(SimpleApplication app, boolean increase) {
+    public SpeedChangePill(SimpleApplication app, boolean increase, float strength) {
         super(app, 0.3f, "Materials/Items/SpeedPill.j3md");
         
         increaseSpeed = increase;
+        this.strength = strength;
         
         rectMaterial.setFloat("SpeedFactor", increase ? 3.0f : 0.2f);
         rectMaterial.setFloat("Trail", increase ? 0.2f : 0.07f);
@@ -23,7 +25,7 @@ public class SpeedChangePill extends AlphaRectCollectable {
 
     @Override
     protected void effect() {
-        float delta = 0.3f + 0.3f * (float) Math.random();
+        float delta = 0.3f + 0.3f * strength;
         GameThemeController.instance().changeParameter("Speed", increaseSpeed ? delta : -delta);
     }
 
@@ -11,11 +11,13 @@ import pt.edj.cp.timing.events.IEvent;
 public class TemperatureChangePill extends AlphaRectCollectable {
     
     private boolean increaseTemp;
+    private float strength;
     
-    public TemperatureChangePill(SimpleApplication app, boolean increase) {
+    public TemperatureChangePill(SimpleApplication app, boolean increase, float strength) {
         super(app, 0.3f, "Materials/Items/FunnyPill.j3md");
         
         increaseTemp = increase;
+        this.strength = strength;
         
         rectMaterial.setVector2("NoiseOffset", 
                 new Vector2f(10.f * (float) Math.random(), 
@@ -29,7 +31,7 @@ public class TemperatureChangePill extends AlphaRectCollectable {
 
     @Override
     protected void effect() {
-        float delta = 0.3f + 0.3f * (float) Math.random();
+        float delta = 0.3f + 0.3f * strength;
         GameThemeController.instance().changeParameter("Temperature", increaseTemp ? delta : -delta);
     }
 
@@ -17,9 +17,6 @@ public class BoxPlatform extends PlatformItem {
     Material normalMat;
     Material gfxMat;
     
-    float flashTimeLeft = 0.0f;
-    boolean flashing = false;
-    
     public BoxPlatform(SimpleApplication app) {
         super();
         
@@ -47,21 +44,31 @@ public class BoxPlatform extends PlatformItem {
 
     
     @Override
-    public void someEffectHappens() {
-        flashing = true;
-        flashTimeLeft = FLASH_TIME;
-        boxGeo.setMaterial(gfxMat);
+    public void bindAnimations(PlatformAnimationStore animations) {
+        animations.bindFlash(parentPlatform, this, FLASH_TIME);
     }
 
     
     @Override
-    public void update(float tpf, float globalBeat, float platformBeat) {
-        if (flashing) {
-            if ((flashTimeLeft -= tpf) <= 0.0f) {
-                flashing = false;
-                boxGeo.setMaterial(normalMat);
-            }
+    public void someEffectHappens() {
+        PlatformAnimationStore animations = getAnimations();
+        if (animations != null)
+            animations.startFlash(parentPlatform);
+    }
+
+    
+    final Runnable endFlash = new Runnable() {
+        public void run() {
+            setFlashing(false);
         }
+    };
+    
+    
+    /**
+     * Driven by PlatformAnimationStore
+     */
+    void setFlashing(boolean flashing) {
+        boxGeo.setMaterial(flashing ? gfxMat : normalMat);
     }
 
     
@@ -13,6 +13,7 @@ import pt.edj.cp.timing.events.ChordChangeEvent;
 import pt.edj.cp.timing.events.IEvent;
 import pt.edj.cp.timing.events.IEventListener;
 import pt.edj.cp.timing.events.MetronomeBeatEvent;
+import pt.edj.cp.util.HashRandom;
 import pt.edj.cp.world.platforms.sfx.SoundObject;
 
 
@@ -26,10 +27,20 @@ public class Platform implements IEventListener, Savable {
     private SoundObject sfx;
     private boolean active;
     
-    private float timeSinceLastContact;
+    private volatile PlatformScheduler scheduler;
+    
+    // slot in PlatformAnimationStore, -1 while not in the world
+    int animSlot = -1;
+    
+    // free list this platform is returned to, see PlatformPool
+    private String poolKey;
     
     private static final float TOGGLE_THRESHOLD = 0.3f;     // 250 ms
     
+    // streams for the seeds of the items, 0-7: PlatformFactory
+    private static final int STREAM_SHAPE = 8;
+    private static final int STREAM_GFX = 9;
+    
     
     public Platform(Vector3f position,
                     PlatformItem spatial,
@@ -48,17 +59,16 @@ public class Platform implements IEventListener, Savable {
         allPlatformItems.add(platformSpatial);
         
         platformSpatial.setUserData("platform", this);
-        
-        timeSinceLastContact = 0.f;
+        platformSpatial.setParentPlatform(this);
     }
     
     
     public void playerContact() {
-        if (timeSinceLastContact > TOGGLE_THRESHOLD) {
+        float sinceLastContact = (scheduler != null) ? scheduler.getAnimations().touch(this) : 0.0f;
+        
+        if (sinceLastContact > TOGGLE_THRESHOLD) {
             setActive(!active);
         }
-        
-        timeSinceLastContact = 0.0f;
     }
     
     
@@ -73,6 +83,42 @@ public class Platform implements IEventListener, Savable {
     }
     
     
+    public void linkSound(){
+        sfx.link();
+    }
+    
+    
+    /**
+     * Re-initializes a recycled platform at a new position. The items are
+     * reset in place, so meshes, materials and physics controls are reused.
+     */
+    public void reset(Vector3f position, long seed, String samplePath, float[] chord) {
+        topNode.setLocalTranslation(position);
+        active = false;
+        
+        for (PlatformItem item : allPlatformItems)
+            item.setActive(false);
+        
+        platformSpatial.reset(HashRandom.nextLong(seed, STREAM_SHAPE), null);
+        Vector3f extents = platformSpatial.getExtents();
+        long gfxSeed = HashRandom.nextLong(seed, STREAM_GFX);
+        for (PlatformItem item : gfxNodes)
+            item.reset(gfxSeed, extents);
+        
+        sfx.reset(samplePath, chord);
+    }
+    
+    
+    public String getPoolKey() {
+        return poolKey;
+    }
+    
+    
+    public void setPoolKey(String key) {
+        poolKey = key;
+    }
+    
+    
     public void killSoundLink(){
         sfx.kill();
     }
@@ -101,12 +147,39 @@ public class Platform implements IEventListener, Savable {
     }
     
     
-    public void update(float tpf, float globalBeat) {
-        // TODO
-        for (PlatformItem item : allPlatformItems)
-            item.update(tpf, globalBeat, 0.0f);
+    /**
+     * Hooks the items up to the per-frame updates while the platform is in
+     * the world, null detaches them again. Render thread only.
+     */
+    public void setScheduler(PlatformScheduler s) {
+        if (scheduler != null) {
+            for (PlatformItem item : allPlatformItems)
+                scheduler.unschedule(item);
+            scheduler.getAnimations().release(this);
+        }
+        
+        scheduler = s;
         
-        timeSinceLastContact += tpf;
+        if (s != null) {
+            s.getAnimations().allocate(this);
+            for (PlatformItem item : allPlatformItems) {
+                item.bindAnimations(s.getAnimations());
+                if (item.isAnimating())
+                    s.schedule(item);
+            }
+        }
+    }
+    
+    
+    public PlatformScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    
+    void requestUpdates(PlatformItem item) {
+        PlatformScheduler s = scheduler;
+        if (s != null)
+            s.schedule(item);
     }
     
     
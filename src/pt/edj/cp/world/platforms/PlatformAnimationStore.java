@@ -0,0 +1,307 @@
+package pt.edj.cp.world.platforms;
+
+import com.jme3.material.Material;
+import java.util.ArrayList;
+import pt.edj.cp.timing.GameThemeController;
+import pt.edj.cp.util.ColorHelper;
+
+
+/**
+ * Animation state of all platforms in the world, one slot per platform, kept
+ * in parallel primitive arrays and advanced in a single loop per frame.
+ *
+ * Items bind their materials to the slot of their platform when it enters
+ * the world (see PlatformItem.bindAnimations) and then only start effects,
+ * the timers themselves live here. Material parameters are written only
+ * when the value behind them changed.
+ *
+ * Each frame, beginFrame() runs on the render thread, then advance() covers
+ * all slots, either in one call or split into disjoint ranges that run in
+ * parallel, recording their material changes into separate command buffers.
+ *
+ * Slots are swap-removed, so a platform's slot index may change while it is
+ * in the world. start*() may be called from any thread, everything else
+ * belongs to the render thread.
+ */
+public class PlatformAnimationStore {
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    private int count = 0;
+    private Platform[] platforms;
+
+    // time of the last player contact
+    private float[] contactTime;
+
+    // GlowGFX: color follows the temperature while visible, highlight decays
+    private Material[] glowMat;
+    private float[] glowHue;
+    private float[] glowTemp;
+    private boolean[] glowVisible;
+    private float[] highlightLeft;
+    private float[] highlightDuration;
+    private float[] highlightWritten;
+
+    // BoxPlatform: material swapped while flashing
+    private BoxPlatform[] flashBox;
+    private float[] flashLeft;
+    private float[] flashDuration;
+
+    private ArrayList<Platform> highlightRequests = new ArrayList<Platform>();
+    private ArrayList<Platform> flashRequests = new ArrayList<Platform>();
+    private ArrayList<Platform> drainingHighlights = new ArrayList<Platform>();
+    private ArrayList<Platform> drainingFlashes = new ArrayList<Platform>();
+
+    private float time = 0.0f;
+    private float tpf = 0.0f;
+    private float temperature = 0.0f;
+
+
+    public PlatformAnimationStore() {
+        allocateArrays(INITIAL_CAPACITY);
+    }
+
+
+    private void allocateArrays(int capacity) {
+        Platform[] oldPlatforms = platforms;
+        float[] oldContactTime = contactTime;
+        Material[] oldGlowMat = glowMat;
+        float[] oldGlowHue = glowHue;
+        float[] oldGlowTemp = glowTemp;
+        boolean[] oldGlowVisible = glowVisible;
+        float[] oldHighlightLeft = highlightLeft;
+        float[] oldHighlightDuration = highlightDuration;
+        float[] oldHighlightWritten = highlightWritten;
+        BoxPlatform[] oldFlashBox = flashBox;
+        float[] oldFlashLeft = flashLeft;
+        float[] oldFlashDuration = flashDuration;
+
+        platforms = new Platform[capacity];
+        contactTime = new float[capacity];
+        glowMat = new Material[capacity];
+        glowHue = new float[capacity];
+        glowTemp = new float[capacity];
+        glowVisible = new boolean[capacity];
+        highlightLeft = new float[capacity];
+        highlightDuration = new float[capacity];
+        highlightWritten = new float[capacity];
+        flashBox = new BoxPlatform[capacity];
+        flashLeft = new float[capacity];
+        flashDuration = new float[capacity];
+
+        if (oldPlatforms != null) {
+            System.arraycopy(oldPlatforms, 0, platforms, 0, count);
+            System.arraycopy(oldContactTime, 0, contactTime, 0, count);
+            System.arraycopy(oldGlowMat, 0, glowMat, 0, count);
+            System.arraycopy(oldGlowHue, 0, glowHue, 0, count);
+            System.arraycopy(oldGlowTemp, 0, glowTemp, 0, count);
+            System.arraycopy(oldGlowVisible, 0, glowVisible, 0, count);
+            System.arraycopy(oldHighlightLeft, 0, highlightLeft, 0, count);
+            System.arraycopy(oldHighlightDuration, 0, highlightDuration, 0, count);
+            System.arraycopy(oldHighlightWritten, 0, highlightWritten, 0, count);
+            System.arraycopy(oldFlashBox, 0, flashBox, 0, count);
+            System.arraycopy(oldFlashLeft, 0, flashLeft, 0, count);
+            System.arraycopy(oldFlashDuration, 0, flashDuration, 0, count);
+        }
+    }
+
+
+    /**
+     * Gives the platform a slot and resets it
+     */
+    void allocate(Platform platform) {
+        if (count == platforms.length)
+            allocateArrays(2 * count);
+
+        int slot = count++;
+        platforms[slot] = platform;
+        platform.animSlot = slot;
+
+        contactTime[slot] = time;
+        glowMat[slot] = null;
+        glowVisible[slot] = false;
+        highlightLeft[slot] = 0.0f;
+        flashBox[slot] = null;
+        flashLeft[slot] = 0.0f;
+    }
+
+
+    void release(Platform platform) {
+        int slot = platform.animSlot;
+        if (slot < 0)
+            return;
+
+        platform.animSlot = -1;
+        int last = --count;
+
+        if (slot < last) {
+            platforms[slot] = platforms[last];
+            platforms[slot].animSlot = slot;
+            contactTime[slot] = contactTime[last];
+            glowMat[slot] = glowMat[last];
+            glowHue[slot] = glowHue[last];
+            glowTemp[slot] = glowTemp[last];
+            glowVisible[slot] = glowVisible[last];
+            highlightLeft[slot] = highlightLeft[last];
+            highlightDuration[slot] = highlightDuration[last];
+            highlightWritten[slot] = highlightWritten[last];
+            flashBox[slot] = flashBox[last];
+            flashLeft[slot] = flashLeft[last];
+            flashDuration[slot] = flashDuration[last];
+        }
+
+        platforms[last] = null;
+        glowMat[last] = null;
+        flashBox[last] = null;
+    }
+
+
+    /**
+     * One glow per platform, the material gets "Color" and "Highlight" written
+     */
+    public void bindGlow(Platform platform, Material mat, float hue, float duration) {
+        int slot = platform.animSlot;
+        glowMat[slot] = mat;
+        glowHue[slot] = hue;
+        glowTemp[slot] = Float.NaN;
+        highlightDuration[slot] = duration;
+        highlightWritten[slot] = Float.NaN;
+    }
+
+
+    public void setGlowVisible(Platform platform, boolean visible) {
+        int slot = platform.animSlot;
+        if (slot >= 0)
+            glowVisible[slot] = visible;
+    }
+
+
+    public void bindFlash(Platform platform, BoxPlatform box, float duration) {
+        int slot = platform.animSlot;
+        flashBox[slot] = box;
+        flashDuration[slot] = duration;
+    }
+
+
+    public void startHighlight(Platform platform) {
+        synchronized (this) {
+            highlightRequests.add(platform);
+        }
+    }
+
+
+    public void startFlash(Platform platform) {
+        synchronized (this) {
+            flashRequests.add(platform);
+        }
+    }
+
+
+    /**
+     * Returns the seconds since the last contact and restarts the count
+     */
+    float touch(Platform platform) {
+        int slot = platform.animSlot;
+        if (slot < 0)
+            return 0.0f;
+
+        float since = time - contactTime[slot];
+        contactTime[slot] = time;
+        return since;
+    }
+
+
+    /**
+     * Starts requested effects and takes the frame's time step and
+     * temperature, render thread only
+     */
+    public void beginFrame(float tpf) {
+        this.tpf = tpf;
+        time += tpf;
+
+        synchronized (this) {
+            ArrayList<Platform> tmp = drainingHighlights;
+            drainingHighlights = highlightRequests;
+            highlightRequests = tmp;
+
+            tmp = drainingFlashes;
+            drainingFlashes = flashRequests;
+            flashRequests = tmp;
+        }
+
+        for (int i = 0; i < drainingHighlights.size(); i++) {
+            int slot = drainingHighlights.get(i).animSlot;
+            if (slot >= 0 && glowMat[slot] != null)
+                highlightLeft[slot] = highlightDuration[slot];
+        }
+        drainingHighlights.clear();
+
+        for (int i = 0; i < drainingFlashes.size(); i++) {
+            int slot = drainingFlashes.get(i).animSlot;
+            if (slot >= 0 && flashBox[slot] != null) {
+                if (flashLeft[slot] <= 0.0f)
+                    flashBox[slot].setFlashing(true);
+                flashLeft[slot] = flashDuration[slot];
+            }
+        }
+        drainingFlashes.clear();
+
+        temperature = GameThemeController.instance().getParameter("Temperature");
+    }
+
+
+    /**
+     * Advances the slots in [from, to), may run on a worker thread as long as
+     * the ranges of concurrent calls do not overlap
+     */
+    public void advance(int from, int to, PlatformCommandBuffer commands) {
+        float temp = temperature;
+
+        for (int i = from; i < to; i++) {
+            Material mat = glowMat[i];
+
+            if (mat != null) {
+                float left = highlightLeft[i];
+                if (left > 0.0f) {
+                    left = Math.max(left - tpf, 0.0f);
+                    highlightLeft[i] = left;
+                }
+
+                float highlight = (left > 0.0f) ? left / highlightDuration[i] : 0.0f;
+                if (highlight != highlightWritten[i]) {
+                    commands.setFloat(mat, "Highlight", highlight);
+                    highlightWritten[i] = highlight;
+                }
+
+                if (glowVisible[i] && temp != glowTemp[i]) {
+                    commands.setVector4(mat, "Color", ColorHelper.computeFromTemperature(temp, glowHue[i], 1, 1, 1));
+                    glowTemp[i] = temp;
+                }
+            }
+
+            float flash = flashLeft[i];
+            if (flash > 0.0f) {
+                flash -= tpf;
+                if (flash <= 0.0f) {
+                    flash = 0.0f;
+                    commands.run(flashBox[i].endFlash);
+                }
+                flashLeft[i] = flash;
+            }
+        }
+    }
+
+
+    /**
+     * Seconds of game time since the store was created
+     */
+    public float getTime() {
+        return time;
+    }
+
+
+    public int getSlotCount() {
+        return count;
+    }
+
+}
@@ -1,46 +1,108 @@
-package pt.edj.cp.world.platforms;
-
-import com.jme3.bullet.collision.PhysicsCollisionEvent;
-import com.jme3.bullet.collision.PhysicsCollisionListener;
-import com.jme3.scene.Spatial;
-import pt.edj.cp.world.items.Collectable;
-
-
-public class PlatformCollisionListener implements PhysicsCollisionListener{
-    
-    static private long sTime = System.currentTimeMillis();
-
-    public void collision(PhysicsCollisionEvent event) {
-        if (checkForCollision(event.getNodeA(), event.getNodeB(), event)
-                || checkForCollision(event.getNodeB(), event.getNodeA(), event)) {
-            /*
-            float ai = event.getAppliedImpulse();
-            int lt = event.getLifeTime();
-            int t = event.getType();
-            
-            System.out.printf("[%6d] Collision T=%d lt=%d ai=%g\n", System.currentTimeMillis()-sTime, t, lt, ai);
-            */
-        }
-    }
-    
-    private boolean checkForCollision(Spatial character, Spatial object, PhysicsCollisionEvent event) {
-        if (character.getName() == null
-                || !character.getName().startsWith("character"))
-            return false;
-        
-        Platform plat = object.getUserData("platform");
-        if (plat != null) {
-            plat.playerContact();
-            return true;
-        }
-        
-        Collectable coll = object.getUserData("collectable");
-        if (coll != null) {
-            coll.collect();
-            return true;
-        }
-        
-        return false;
-    }
-
-}
+package pt.edj.cp.world.platforms;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.bullet.collision.PhysicsCollisionEvent;
+import com.jme3.bullet.collision.PhysicsCollisionListener;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import pt.edj.cp.physics.CompoundPlatformBodies;
+import pt.edj.cp.physics.ICharacterContactHandler;
+import pt.edj.cp.physics.WorldPhysicsManager;
+
+
+/**
+ * Hands contacts between the character and platforms or collectables to
+ * their ICharacterContactHandler. The collision groups set up by
+ * WorldPhysicsManager keep all other pairs of those objects out of the
+ * physics space, so apart from character-vs-world contacts only the
+ * relevant events arrive here, and they are told apart by group alone.
+ *
+ * Also registered as tick listener, to count the events per physics tick.
+ * Collision events always arrive on the render thread, see
+ * WorldPhysicsManager, so handlers may change the scene graph. Only
+ * prePhysicsTick() may run on the physics thread, and it only touches the
+ * counters, which are read once the step is over.
+ */
+public class PlatformCollisionListener implements PhysicsCollisionListener, PhysicsTickListener {
+
+    private long events = 0;
+    private long contacts = 0;
+    private long ticks = 0;
+    private int eventsSinceTick = 0;
+    private int lastTickEvents = 0;
+
+    public void collision(PhysicsCollisionEvent event) {
+        events++;
+        eventsSinceTick++;
+
+        PhysicsCollisionObject a = event.getObjectA();
+        PhysicsCollisionObject b = event.getObjectB();
+
+        boolean handled;
+        if (a.getCollisionGroup() == WorldPhysicsManager.GROUP_CHARACTER)
+            handled = dispatch(b, event, false);
+        else if (b.getCollisionGroup() == WorldPhysicsManager.GROUP_CHARACTER)
+            handled = dispatch(a, event, true);
+        else
+            handled = false;
+
+        if (handled)
+            contacts++;
+    }
+
+    private boolean dispatch(PhysicsCollisionObject object, PhysicsCollisionEvent event, boolean isA) {
+        int group = object.getCollisionGroup();
+        if (group != WorldPhysicsManager.GROUP_PLATFORM && group != WorldPhysicsManager.GROUP_COLLECTABLE)
+            return false;
+
+        Object user = object.getUserObject();
+
+        // platforms merged into a compound cluster body have no node of their own
+        if (!(user instanceof ICharacterContactHandler))
+            user = CompoundPlatformBodies.getChild(object,
+                    isA ? event.getPositionWorldOnA() : event.getPositionWorldOnB());
+
+        if (user instanceof ICharacterContactHandler) {
+            ((ICharacterContactHandler) user).characterContact();
+            return true;
+        }
+
+        return false;
+    }
+
+    public void prePhysicsTick(PhysicsSpace space, float tpf) {
+        // events are delivered after the step, so these belong to the last tick
+        ticks++;
+        lastTickEvents = eventsSinceTick;
+        eventsSinceTick = 0;
+    }
+
+    public void physicsTick(PhysicsSpace space, float tpf) {
+    }
+
+    /**
+     * Collision events delivered for the previous physics tick
+     */
+    public int getLastTickEvents() {
+        return lastTickEvents;
+    }
+
+    /**
+     * All collision events delivered so far
+     */
+    public long getEventCount() {
+        return events;
+    }
+
+    /**
+     * Events that reached a platform or collectable
+     */
+    public long getContactCount() {
+        return contacts;
+    }
+
+    public long getTickCount() {
+        return ticks;
+    }
+
+}
@@ -0,0 +1,181 @@
+package pt.edj.cp.world.platforms;
+
+import com.jme3.material.Material;
+import com.jme3.math.Vector4f;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+
+
+/**
+ * Scene graph and material changes made by the platform update pass.
+ *
+ * An immediate buffer applies every command right away and is used by the
+ * serial path. A deferred buffer only records them, so the pass can run on
+ * worker threads, and the recorded commands are replayed by apply() on the
+ * render thread, in recording order.
+ */
+public class PlatformCommandBuffer {
+
+    private static final int SET_FLOAT = 0;
+    private static final int SET_VECTOR4 = 1;
+    private static final int ATTACH = 2;
+    private static final int DETACH = 3;
+    private static final int RUN = 4;
+    private static final int UPDATE = 5;
+
+    /**
+     * Applies everything right away, for the serial path
+     */
+    public static final PlatformCommandBuffer IMMEDIATE = new PlatformCommandBuffer(false);
+
+    private final boolean deferred;
+
+    private int count = 0;
+    private int[] ops = new int[64];
+    private Object[] targets = new Object[64];
+    private String[] names = new String[64];
+    private Object[] args = new Object[64];
+    private float[] values = new float[64];
+    private float[] values2 = new float[64];
+
+
+    public PlatformCommandBuffer(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+
+    public void setFloat(Material mat, String name, float value) {
+        if (deferred)
+            record(SET_FLOAT, mat, name, null, value, 0);
+        else
+            mat.setFloat(name, value);
+    }
+
+
+    public void setVector4(Material mat, String name, Vector4f value) {
+        if (deferred)
+            record(SET_VECTOR4, mat, name, value, 0, 0);
+        else
+            mat.setVector4(name, value);
+    }
+
+
+    public void attachChild(Node parent, Spatial child) {
+        if (deferred)
+            record(ATTACH, parent, null, child, 0, 0);
+        else
+            parent.attachChild(child);
+    }
+
+
+    public void detachChild(Node parent, Spatial child) {
+        if (deferred)
+            record(DETACH, parent, null, child, 0, 0);
+        else
+            parent.detachChild(child);
+    }
+
+
+    /**
+     * Anything else that has to happen on the render thread
+     */
+    public void run(Runnable r) {
+        if (deferred)
+            record(RUN, r, null, null, 0, 0);
+        else
+            r.run();
+    }
+
+
+    /**
+     * Runs the item's serial update(), for items without a parallel variant
+     */
+    public void update(PlatformItem item, float tpf, float globalBeat) {
+        if (deferred)
+            record(UPDATE, item, null, null, tpf, globalBeat);
+        else
+            item.update(tpf, globalBeat, 0.0f);
+    }
+
+
+    /**
+     * Replays and clears the recorded commands, render thread only
+     */
+    public void apply() {
+        for (int i = 0; i < count; i++) {
+            Object target = targets[i];
+            Object arg = args[i];
+
+            switch (ops[i]) {
+                case SET_FLOAT:
+                    ((Material) target).setFloat(names[i], values[i]);
+                    break;
+                case SET_VECTOR4:
+                    ((Material) target).setVector4(names[i], (Vector4f) arg);
+                    break;
+                case ATTACH:
+                    ((Node) target).attachChild((Spatial) arg);
+                    break;
+                case DETACH:
+                    ((Node) target).detachChild((Spatial) arg);
+                    break;
+                case RUN:
+                    ((Runnable) target).run();
+                    break;
+                case UPDATE:
+                    ((PlatformItem) target).update(values[i], values2[i], 0.0f);
+                    break;
+            }
+
+            targets[i] = null;
+            names[i] = null;
+            args[i] = null;
+        }
+
+        count = 0;
+    }
+
+
+    public int size() {
+        return count;
+    }
+
+
+    private void record(int op, Object target, String name, Object arg, float value, float value2) {
+        if (count == ops.length) {
+            int capacity = 2 * count;
+            int[] newOps = new int[capacity];
+            Object[] newTargets = new Object[capacity];
+            String[] newNames = new String[capacity];
+            Object[] newArgs = new Object[capacity];
+            float[] newValues = new float[capacity];
+            float[] newValues2 = new float[capacity];
+            System.arraycopy(ops, 0, newOps, 0, count);
+            System.arraycopy(targets, 0, newTargets, 0, count);
+            System.arraycopy(names, 0, newNames, 0, count);
+            System.arraycopy(args, 0, newArgs, 0, count);
+            System.arraycopy(values, 0, newValues, 0, count);
+            System.arraycopy(values2, 0, newValues2, 0, count);
+            ops = newOps;
+            targets = newTargets;
+            names = newNames;
+            args = newArgs;
+            values = newValues;
+            values2 = newValues2;
+        }
+
+        ops[count] = op;
+        targets[count] = target;
+        names[count] = name;
+        args[count] = arg;
+        values[count] = value;
+        values2[count] = value2;
+        count++;
+    }
+
+}
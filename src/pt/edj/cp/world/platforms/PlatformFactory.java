@@ -2,10 +2,11 @@ package pt.edj.cp.world.platforms;
 
 import com.jme3.app.SimpleApplication;
 import com.jme3.math.Vector3f;
-import pt.edj.cp.app.IngameState;
+import pt.edj.cp.util.HashRandom;
 import pt.edj.cp.util.SoundPathManager;
 import pt.edj.cp.world.platforms.gfx.CircleEmitterGFX;
 import pt.edj.cp.world.platforms.gfx.GlowGFX;
+import pt.edj.cp.world.platforms.sfx.AudioNodePool;
 import pt.edj.cp.world.platforms.sfx.SoundObject;
 import pt.edj.cp.world.platforms.shapes.TriangleSpikesPlatform;
 
@@ -14,37 +15,92 @@ public class PlatformFactory {
     
     private static final float MELODIC_QUOTE = 0.35f;
     
+    private static final int MIN_SPIKES = 3;
+    private static final int MAX_SPIKES = 6;
+    
+    private static final int GFX_GLOW = 0;
+    private static final int GFX_CIRCLES = 1;
+    
+    // stream ids for the per-platform choices, see Platform.reset() for more
+    private static final int STREAM_MELODIC = 0;
+    private static final int STREAM_SPIKES = 1;
+    private static final int STREAM_GFX = 2;
+    private static final int STREAM_SAMPLE = 3;
+    
     private SimpleApplication app;
     private SoundPathManager sam;
     
+    private PlatformPool pool = new PlatformPool();
+    private AudioNodePool audioNodes = new AudioNodePool();
+    private String[][] poolKeys;
+    
     public PlatformFactory(SimpleApplication app, SoundPathManager spm){
         this.app = app;
         this.sam = spm;
+        
+        poolKeys = new String[MAX_SPIKES - MIN_SPIKES + 1][2];
+        for (int i = 0; i < poolKeys.length; i++) {
+            poolKeys[i][GFX_GLOW] = PlatformPool.key(MIN_SPIKES + i, GlowGFX.class);
+            poolKeys[i][GFX_CIRCLES] = PlatformPool.key(MIN_SPIKES + i, CircleEmitterGFX.class);
+        }
     }
     
     
-    public Platform createPlatform(Vector3f pos) {
-        SoundObject soundObject = new SoundObject(
-                app,
-                sam.getRndInstrumentPath((Math.random() <= MELODIC_QUOTE ? 
+    /**
+     * Picks the sample of a platform from the current sound set. Has to be
+     * called on the render thread, like everything that reads the sound set.
+     */
+    public String chooseSample(long seed) {
+        return sam.getInstrumentPath((HashRandom.nextFloat(seed, STREAM_MELODIC) <= MELODIC_QUOTE ? 
                     SoundPathManager.INSTR_MELODIC :
-                    SoundPathManager.INSTR_PERCUSSIVE)),
-                app.getStateManager().getState(IngameState.class)
-                .getChordController().getCurrentChord());
-        
-        Platform plat = new Platform(
-                pos,
-                new TriangleSpikesPlatform(app),
-                soundObject);
+                    SoundPathManager.INSTR_PERCUSSIVE),
+                HashRandom.nextFloat(seed, STREAM_SAMPLE));
+    }
+    
+    
+    /**
+     * Returns a platform whose look is determined by the seed. Recycled
+     * platforms of the same shape and GFX type are reused when available.
+     * Sample and chord are picked beforehand on the render thread, see
+     * chooseSample(), so this may be called from the zone streaming worker
+     * threads.
+     */
+    public Platform createPlatform(Vector3f pos, long seed, String samplePath, float[] chord) {
+        int spikes = MIN_SPIKES + HashRandom.nextInt(seed, STREAM_SPIKES, MAX_SPIKES - MIN_SPIKES + 1);
+        int gfx = HashRandom.nextBoolean(seed, STREAM_GFX) ? GFX_GLOW : GFX_CIRCLES;
+        String key = poolKeys[spikes - MIN_SPIKES][gfx];
         
-        //plat.addGFX(new SimpleParticleGFX(app));
-        if (Math.random() > 0.5f)
-            plat.addGFX(new GlowGFX(app, plat.getPlatformSpatial().getExtents()));
-        else
-            plat.addGFX(new CircleEmitterGFX(app, plat.getPlatformSpatial().getExtents(), 3));
+        Platform plat = pool.obtain(key);
+        if (plat == null) {
+            plat = new Platform(
+                    pos,
+                    new TriangleSpikesPlatform(app, spikes),
+                    new SoundObject(app, samplePath, chord, audioNodes));
+            plat.setPoolKey(key);
+            
+            //plat.addGFX(new SimpleParticleGFX(app));
+            if (gfx == GFX_GLOW)
+                plat.addGFX(new GlowGFX(app));
+            else
+                plat.addGFX(new CircleEmitterGFX(app, 3));
+        }
         
+        plat.reset(pos, seed, samplePath, chord);
         return plat;
     }
+    
+    
+    /**
+     * Returns a platform that was removed from the world for later reuse
+     */
+    public void recycle(Platform plat) {
+        pool.recycle(plat);
+    }
+    
+    
+    public PlatformPool getPool() {
+        return pool;
+    }
 
     
 }
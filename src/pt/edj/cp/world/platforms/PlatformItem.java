@@ -3,17 +3,21 @@ package pt.edj.cp.world.platforms;
 import com.jme3.bullet.collision.shapes.CollisionShape;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
+import pt.edj.cp.physics.ICharacterContactHandler;
 import pt.edj.cp.physics.ICollisionShapeProvider;
 
 /**
  *
  * @author rechtslang
  */
-public abstract class PlatformItem extends Node implements ICollisionShapeProvider {
+public abstract class PlatformItem extends Node implements ICollisionShapeProvider, ICharacterContactHandler {
     
     protected boolean active = false;
     protected Platform parentPlatform;
     
+    // index in PlatformScheduler, -1 while not scheduled
+    int schedulerSlot = -1;
+    
     
     
     protected final float rand(float min, float max) {
@@ -38,12 +42,85 @@ public abstract class PlatformItem extends Node implements ICollisionShapeProvid
     }
 
     /**
-     * Gets called regularly
+     * Re-initializes a recycled item as if it was newly created, see
+     * PlatformPool. Extents are those of the platform shape.
+     */
+    public void reset(long seed, Vector3f extents) {
+    }
+    
+    /**
+     * Gets called every frame while the item is scheduled, see
+     * requestUpdates() and isAnimating()
      */
     public void update(float tpf, float globalBeat, float platformBeat) {
     }
     
     
+    /**
+     * Variant of update() for the parallel platform pass, which may run on a
+     * worker thread. Implementations must not touch the scene graph or
+     * materials directly, but go through the command buffer. By default the
+     * whole update() is deferred to the render thread.
+     */
+    public void simulate(float tpf, float globalBeat, PlatformCommandBuffer commands) {
+        commands.update(this, tpf, globalBeat);
+    }
+    
+    
+    /**
+     * Whether the item still needs update() calls. Once this returns false,
+     * the item is unscheduled until it calls requestUpdates() again.
+     */
+    public boolean isAnimating() {
+        return false;
+    }
+    
+    
+    /**
+     * Called on the render thread when the platform enters the world, items
+     * with timer-driven effects bind them to the platform's slot here
+     */
+    public void bindAnimations(PlatformAnimationStore animations) {
+    }
+    
+    
+    /**
+     * The store of the platform's world, null while it is not in the world
+     */
+    protected final PlatformAnimationStore getAnimations() {
+        if (parentPlatform == null)
+            return null;
+        
+        PlatformScheduler scheduler = parentPlatform.getScheduler();
+        return (scheduler != null) ? scheduler.getAnimations() : null;
+    }
+    
+    
+    /**
+     * To be called when an animation starts, may be called from any thread
+     */
+    protected final void requestUpdates() {
+        if (parentPlatform != null)
+            parentPlatform.requestUpdates(this);
+    }
+    
+    
+    /**
+     * Whether the item moves relative to its platform or the platform moves
+     * at all. Only moving items get a kinematic physics body, see
+     * WorldPhysicsManager.addToPhysicsScene().
+     */
+    public boolean isMoving() {
+        return false;
+    }
+    
+    
+    public void characterContact() {
+        if (parentPlatform != null)
+            parentPlatform.playerContact();
+    }
+    
+    
     public void setParentPlatform(Platform pf){
         this.parentPlatform = pf;
     }
@@ -0,0 +1,75 @@
+package pt.edj.cp.world.platforms;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+
+/**
+ * Free lists of platforms that were removed from the world, keyed by shape and
+ * GFX type. The factory takes platforms from here and resets them instead of
+ * building new meshes, materials, audio nodes and physics controls.
+ *
+ * Platforms are recycled on the render thread and obtained on the zone
+ * streaming threads, so all access is synchronized.
+ */
+public class PlatformPool {
+
+    private static final int MAX_PER_KEY = 64;
+
+    private HashMap<String, LinkedList<Platform>> free
+            = new HashMap<String, LinkedList<Platform>>();
+
+    private long created;
+    private long reused;
+
+
+    public static String key(int spikes, Class<? extends PlatformItem> gfx) {
+        return "TriangleSpikes/" + spikes + "/" + gfx.getSimpleName();
+    }
+
+
+    /**
+     * Returns a free platform for the given key, or null if there is none
+     */
+    public synchronized Platform obtain(String key) {
+        LinkedList<Platform> list = free.get(key);
+        if (list == null || list.isEmpty()) {
+            created++;
+            return null;
+        }
+
+        reused++;
+        return list.removeFirst();
+    }
+
+
+    /**
+     * Hands a platform back, it must already be detached from scene graph,
+     * physics space and event senders
+     */
+    public synchronized void recycle(Platform platform) {
+        String key = platform.getPoolKey();
+        if (key == null)
+            return;
+
+        LinkedList<Platform> list = free.get(key);
+        if (list == null) {
+            list = new LinkedList<Platform>();
+            free.put(key, list);
+        }
+
+        if (list.size() < MAX_PER_KEY)
+            list.add(platform);
+    }
+
+
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+
+}
@@ -0,0 +1,203 @@
+package pt.edj.cp.world.platforms;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Per-frame updates for platform items that are currently animating.
+ *
+ * Most platforms sit idle most of the time, so instead of visiting every item
+ * of every platform each frame, items ask to be scheduled when an animation
+ * starts (a flash, a highlight, circles being emitted) and drop out again
+ * once isAnimating() turns false. The live set is kept in a dense array.
+ *
+ * Plain timers are not scheduled at all, they live in the
+ * PlatformAnimationStore, which is advanced first.
+ *
+ * In parallel mode, the store slots and the scheduled items are split into
+ * chunks that are advanced on a ForkJoinPool. Every chunk records its scene
+ * and material changes into its own PlatformCommandBuffer, the buffers are
+ * applied on the render thread afterwards, in chunk order.
+ *
+ * schedule() may be called from any thread (beat events arrive on the
+ * metronome thread), everything else belongs to the render thread.
+ */
+public class PlatformScheduler {
+
+    // below this many slots plus items, the serial path is used anyway
+    private static final int MIN_PARALLEL_WORK = 64;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final PlatformCommandBuffer commands = new PlatformCommandBuffer(true);
+        int slotFrom, slotTo;
+        int itemFrom, itemTo;
+        float tpf, globalBeat;
+
+        @Override
+        protected void compute() {
+            animations.advance(slotFrom, slotTo, commands);
+            for (int i = itemFrom; i < itemTo; i++)
+                animating[i].simulate(tpf, globalBeat, commands);
+        }
+    }
+
+    private PlatformItem[] animating = new PlatformItem[64];
+    private int count = 0;
+
+    private ArrayList<PlatformItem> pending = new ArrayList<PlatformItem>();
+    private ArrayList<PlatformItem> draining = new ArrayList<PlatformItem>();
+
+    private PlatformAnimationStore animations = new PlatformAnimationStore();
+
+    private ForkJoinPool pool;
+    private Chunk[] chunks;
+
+    private RecursiveAction allChunks = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            invokeAll(chunks);
+        }
+    };
+
+
+    public void schedule(PlatformItem item) {
+        synchronized (this) {
+            pending.add(item);
+        }
+    }
+
+
+    /**
+     * Drops an item right away, e.g. when its platform leaves the world
+     */
+    public void unschedule(PlatformItem item) {
+        if (item.schedulerSlot >= 0)
+            remove(item.schedulerSlot);
+    }
+
+
+    /**
+     * Switches between the serial and the parallel platform pass
+     */
+    public void setParallel(boolean parallel) {
+        if (parallel && pool == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            pool = new ForkJoinPool(threads);
+            chunks = new Chunk[threads * CHUNKS_PER_THREAD];
+            for (int i = 0; i < chunks.length; i++)
+                chunks[i] = new Chunk();
+        } else if (!parallel && pool != null) {
+            pool.shutdown();
+            pool = null;
+            chunks = null;
+        }
+    }
+
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+
+    public void destroy() {
+        setParallel(false);
+    }
+
+
+    public void update(float tpf, float globalBeat) {
+        animations.beginFrame(tpf);
+
+        synchronized (this) {
+            ArrayList<PlatformItem> tmp = draining;
+            draining = pending;
+            pending = tmp;
+        }
+
+        for (int i = 0; i < draining.size(); i++) {
+            PlatformItem item = draining.get(i);
+            if (item.schedulerSlot < 0 && item.parentPlatform != null
+                    && item.parentPlatform.getScheduler() == this)
+                add(item);
+        }
+        draining.clear();
+
+        int slots = animations.getSlotCount();
+        if (pool != null && slots + count >= MIN_PARALLEL_WORK) {
+            updateParallel(tpf, globalBeat, slots);
+        } else {
+            animations.advance(0, slots, PlatformCommandBuffer.IMMEDIATE);
+            for (int i = 0; i < count; i++)
+                animating[i].simulate(tpf, globalBeat, PlatformCommandBuffer.IMMEDIATE);
+        }
+
+        int i = 0;
+        while (i < count) {
+            if (animating[i].isAnimating())
+                i++;
+            else
+                remove(i);
+        }
+    }
+
+
+    private void updateParallel(float tpf, float globalBeat, int slots) {
+        int n = chunks.length;
+        for (int k = 0; k < n; k++) {
+            Chunk chunk = chunks[k];
+            chunk.reinitialize();
+            chunk.slotFrom = (int) ((long) slots * k / n);
+            chunk.slotTo = (int) ((long) slots * (k + 1) / n);
+            chunk.itemFrom = (int) ((long) count * k / n);
+            chunk.itemTo = (int) ((long) count * (k + 1) / n);
+            chunk.tpf = tpf;
+            chunk.globalBeat = globalBeat;
+        }
+
+        allChunks.reinitialize();
+        pool.invoke(allChunks);
+
+        for (int k = 0; k < n; k++)
+            chunks[k].commands.apply();
+    }
+
+
+    public PlatformAnimationStore getAnimations() {
+        return animations;
+    }
+
+
+    public int getAnimatingCount() {
+        return count;
+    }
+
+
+    private void add(PlatformItem item) {
+        if (count == animating.length) {
+            PlatformItem[] grown = new PlatformItem[2 * count];
+            System.arraycopy(animating, 0, grown, 0, count);
+            animating = grown;
+        }
+
+        item.schedulerSlot = count;
+        animating[count++] = item;
+    }
+
+
+    private void remove(int slot) {
+        animating[slot].schedulerSlot = -1;
+
+        PlatformItem last = animating[--count];
+        animating[count] = null;
+        if (slot < count) {
+            animating[slot] = last;
+            last.schedulerSlot = slot;
+        }
+    }
+
+}
@@ -8,59 +8,72 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.shape.Quad;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import pt.edj.cp.timing.GameThemeController;
 import pt.edj.cp.util.ColorHelper;
+import pt.edj.cp.util.HashRandom;
+import pt.edj.cp.world.platforms.PlatformCommandBuffer;
 import pt.edj.cp.world.platforms.PlatformItem;
 
 
 public class CircleEmitterGFX extends PlatformItem {
     
+    // shared by all circles, which are scaled to their size
+    private static final Quad UNIT_QUAD = new Quad(1, 1);
+    
     private SimpleApplication app;
     
+    /**
+     * Keeps its material when it is finished and goes back to the emitter's
+     * spare circles, see start()
+     */
     private class Circle extends Geometry {
         private float maxTime;
         private float currTime;
         private boolean major;
         private Material mat;
         
-        public Circle(Vector2f pos, float maxRadius, float maxTime, boolean major) {
+        public Circle() {
+            this.setMesh(UNIT_QUAD);
+            
+            mat = new Material(app.getAssetManager(), "Materials/Platforms/CircleEmitterGFX.j3md");
+            mat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
+            this.setMaterial(mat);
+        }
+        
+        public void start(float x, float y, float maxRadius, float maxTime, boolean major) {
             float zValue = rand(0.01f, 0.04f);
             this.currTime = 0.0f;
             this.maxTime = maxTime;
             this.major = major;
             
-            this.setMesh(new Quad(2*maxRadius, 2*maxRadius));
-            this.setLocalTranslation(pos.x - maxRadius, pos.y - maxRadius, zValue);
+            this.setLocalScale(2*maxRadius, 2*maxRadius, 1);
+            this.setLocalTranslation(x - maxRadius, y - maxRadius, zValue);
             
             float temp = GameThemeController.instance().getParameter("Temperature");
             
-            mat = new Material(app.getAssetManager(), "Materials/Platforms/CircleEmitterGFX.j3md");
             mat.setVector4("Color", ColorHelper.computeFromTemperature(temp, baseHue, 1.f, 1.f, 1.f));
             mat.setFloat("RelTime", 0.0f);
             mat.setFloat("StartRadius", 0.0f);
             mat.setFloat("MidRadius1", 0.0f);
             mat.setFloat("MidRadius2", 0.0f);
             mat.setFloat("EndRadius", 0.0f);
-            mat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
-            this.setMaterial(mat);
         }
         
-        public boolean advanceTime(float tpf) {
+        public boolean advanceTime(float tpf, float temp, PlatformCommandBuffer commands) {
             currTime = Math.min(currTime + tpf, maxTime);
             
             float relTime = currTime / maxTime;
-            mat.setFloat("RelTime", relTime);
+            commands.setFloat(mat, "RelTime", relTime);
             
             float rad = (float) Math.pow(relTime, 0.7);
-            mat.setFloat("StartRadius", 0.8f * rad);
-            mat.setFloat("MidRadius1", 0.85f * rad);
-            mat.setFloat("MidRadius2", 0.95f * rad);
-            mat.setFloat("EndRadius", 1.0f * rad);
+            commands.setFloat(mat, "StartRadius", 0.8f * rad);
+            commands.setFloat(mat, "MidRadius1", 0.85f * rad);
+            commands.setFloat(mat, "MidRadius2", 0.95f * rad);
+            commands.setFloat(mat, "EndRadius", 1.0f * rad);
             
-            float temp = GameThemeController.instance().getParameter("Temperature");
             float sat = 1 - (float) Math.pow(relTime, 0.7f);
-            mat.setVector4("Color", ColorHelper.computeFromTemperature(temp, baseHue, sat, 1, 1.f));
+            commands.setVector4(mat, "Color", ColorHelper.computeFromTemperature(temp, baseHue, sat, 1, 1.f));
             
             return (currTime >= maxTime);
         }
@@ -71,7 +84,8 @@ public class CircleEmitterGFX extends PlatformItem {
     }
     
     
-    private LinkedList<Circle> circles = new LinkedList<Circle>();
+    private ArrayList<Circle> circles = new ArrayList<Circle>();
+    private ArrayList<Circle> spareCircles = new ArrayList<Circle>();
     private Vector2f maxExtents;
     private int numActiveCircles;
     private boolean addMajorCircleNextFrame = false;
@@ -87,60 +101,113 @@ public class CircleEmitterGFX extends PlatformItem {
         
         float time = beat ? rand(1.2f, 1.6f) : rand(0.4f, 0.6f);
         
-        Circle c = new Circle(new Vector2f(x, y), radius, time, beat);
+        Circle c = spareCircles.isEmpty() ? new Circle() : spareCircles.remove(spareCircles.size() - 1);
+        c.start(x, y, radius, time, beat);
         this.attachChild(c);
         circles.add(c);
     }
     
     
-    public CircleEmitterGFX(SimpleApplication app, Vector3f extents, int minorPoppings) {
+    /**
+     * Color and size are set up by reset()
+     */
+    public CircleEmitterGFX(SimpleApplication app, int minorPoppings) {
         super();
         
         this.app = app;
-        this.maxExtents = new Vector2f(extents.x, extents.y);
-        this.baseHue = rand(0, 1);
+        this.maxExtents = new Vector2f();
         
         numActiveCircles = minorPoppings;
         
         this.setQueueBucket(RenderQueue.Bucket.Transparent);
         this.setCullHint(CullHint.Never);
     }
+    
+    
+    @Override
+    public void reset(long seed, Vector3f extents) {
+        for (Circle c : circles)
+            detachChild(c);
+        spareCircles.addAll(circles);
+        circles.clear();
+        
+        maxExtents.set(extents.x, extents.y);
+        baseHue = HashRandom.nextFloat(seed, 0);
+        addMajorCircleNextFrame = false;
+        active = false;
+    }
 
     
     @Override
     public void someEffectHappens() {
         addMajorCircleNextFrame = true;
+        requestUpdates();
     }
 
     
+    private final Runnable addMinorCircle = new Runnable() {
+        public void run() {
+            addCircle(false);
+        }
+    };
+    
+    private final Runnable addMajorCircle = new Runnable() {
+        public void run() {
+            addCircle(true);
+        }
+    };
+
+    
     @Override
     public void update(float tpf, float globalBeat, float platformBeat) {
-        LinkedList<Circle> removeCircles = new LinkedList<Circle>();
+        simulate(tpf, globalBeat, PlatformCommandBuffer.IMMEDIATE);
+    }
+    
+    
+    /**
+     * Circle lifetimes and colors are computed here, new circles (which need
+     * the asset manager) are created through the command buffer
+     */
+    @Override
+    public void simulate(float tpf, float globalBeat, PlatformCommandBuffer commands) {
+        float temp = GameThemeController.instance().getParameter("Temperature");
         
-        for (Circle c : circles) {
-            if (c.advanceTime(tpf)) {
-                removeCircles.add(c);
+        // replacements are added after the loop, an immediate buffer would
+        // modify the list while it is iterated
+        int replacements = 0;
+        
+        for (int i = circles.size() - 1; i >= 0; i--) {
+            Circle c = circles.get(i);
+            if (c.advanceTime(tpf, temp, commands)) {
+                circles.remove(i);
+                commands.detachChild(this, c);
+                // reused by a later addCircle(), which runs after the detach
+                spareCircles.add(c);
+                if (!c.isMajor() && active)
+                    replacements++;
             }
         }
         
-        circles.removeAll(removeCircles);
-        for (Circle c : removeCircles) {
-            detachChild(c);
-            if (!c.isMajor() && active)
-                addCircle(false);
-        }
+        for (int i = 0; i < replacements; i++)
+            commands.run(addMinorCircle);
         
         if (addMajorCircleNextFrame) {
             addMajorCircleNextFrame = false;
-            addCircle(true);
+            commands.run(addMajorCircle);
         }
     }
     
+    @Override
+    public boolean isAnimating() {
+        return addMajorCircleNextFrame || !circles.isEmpty();
+    }
+    
     @Override
     public void setActive(boolean a) {
         if (!active && a) {
             for (int i = 0; i < numActiveCircles; i++)
                 addCircle(false);
+            requestUpdates();
         }
         
         active = a;
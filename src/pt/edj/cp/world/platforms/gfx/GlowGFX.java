@@ -12,6 +12,8 @@ import com.jme3.scene.VertexBuffer;
 import com.jme3.util.BufferUtils;
 import pt.edj.cp.timing.GameThemeController;
 import pt.edj.cp.util.ColorHelper;
+import pt.edj.cp.util.HashRandom;
+import pt.edj.cp.world.platforms.PlatformAnimationStore;
 import pt.edj.cp.world.platforms.PlatformItem;
 
 
@@ -23,15 +25,10 @@ public class GlowGFX extends PlatformItem {
     private float baseHue;
     
     private float highlightDuration = 0.2f;
-    private float highlightTimeLeft = 0.0f;
-    
-    private float toggleDuration = 0.2f;
-    private float toggleValue = 0.0f;
-    private float toggleAim = 0.0f;
     
     private static Mesh circleMesh = null;
     
-    private static Mesh getCircleMesh() {
+    private static synchronized Mesh getCircleMesh() {
         if (circleMesh == null) {
             int vertCount = 128;
 
@@ -55,18 +52,15 @@ public class GlowGFX extends PlatformItem {
         return circleMesh;
     }
     
-    public GlowGFX(SimpleApplication app, Vector3f extents) {
+    /**
+     * Color, size and depth are set up by reset()
+     */
+    public GlowGFX(SimpleApplication app) {
         super();
         
-        baseHue = rand(0, 1);
-        
         // create material
         mat = new Material(app.getAssetManager(), "Materials/Platforms/GlowGFX.j3md");
-        mat.setVector2("Extents", new Vector2f(extents.x, extents.y * 1.4f));
-        mat.setFloat("Highlight", 0.0f);
-        mat.setFloat("ZValue", 0.01f + 0.04f * (float) Math.random());
         mat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
-        updateColor();
         
         // create geometry
         geom = new Geometry();
@@ -77,28 +71,40 @@ public class GlowGFX extends PlatformItem {
     }
     
     
+    @Override
+    public void reset(long seed, Vector3f extents) {
+        setActive(false);
+        
+        baseHue = HashRandom.nextFloat(seed, 0);
+        
+        mat.setVector2("Extents", new Vector2f(extents.x, extents.y * 1.4f));
+        mat.setFloat("Highlight", 0.0f);
+        mat.setFloat("ZValue", 0.01f + 0.04f * HashRandom.nextFloat(seed, 1));
+        updateColor();
+    }
+    
+    
     private void updateColor() {
         float temp = GameThemeController.instance().getParameter("Temperature");
         mat.setVector4("Color", ColorHelper.computeFromTemperature(temp, baseHue, 1, 1, 1));
     }
 
     
+    /**
+     * Highlight decay and temperature color are driven by the store
+     */
     @Override
-    public void someEffectHappens() {
-        highlightTimeLeft = highlightDuration;
-        mat.setFloat("Highlight", 1.0f);
+    public void bindAnimations(PlatformAnimationStore animations) {
+        animations.bindGlow(parentPlatform, mat, baseHue, highlightDuration);
+        animations.setGlowVisible(parentPlatform, active);
     }
 
     
     @Override
-    public void update(float tpf, float globalBeat, float platformBeat) {
-        if (highlightTimeLeft > 0) {
-            highlightTimeLeft = Math.max(highlightTimeLeft - tpf, 0.0f);
-            float highlight = highlightTimeLeft / highlightDuration;
-            mat.setFloat("Highlight", highlight);
-        }
-        
-        updateColor();
+    public void someEffectHappens() {
+        PlatformAnimationStore animations = getAnimations();
+        if (animations != null)
+            animations.startHighlight(parentPlatform);
     }
     
     @Override
@@ -110,6 +116,10 @@ public class GlowGFX extends PlatformItem {
         }
         
         active = a;
+        
+        PlatformAnimationStore animations = getAnimations();
+        if (animations != null)
+            animations.setGlowVisible(parentPlatform, a);
     }
     
     
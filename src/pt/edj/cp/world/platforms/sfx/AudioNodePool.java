@@ -0,0 +1,91 @@
+package pt.edj.cp.world.platforms.sfx;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.audio.AudioData;
+import com.jme3.audio.AudioKey;
+import com.jme3.audio.AudioNode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Free audio nodes per sample. A recycled platform usually gets a different
+ * sample than it had, so SoundObject hands its old node back here and takes
+ * one for the new sample instead of loading it again.
+ *
+ * New nodes are made from the decoded samples kept here. The asset cache
+ * only holds on to a sample while some node uses it, so a sample that comes
+ * back after its platforms were gone had to be decoded again.
+ *
+ * SoundObjects are reset on the zone streaming threads, so all access is
+ * synchronized.
+ */
+public class AudioNodePool {
+
+    private static final int MAX_PER_SAMPLE = 8;
+    private static final int MAX_SAMPLES = 128;     // more than a sound set has
+
+    private HashMap<String, ArrayList<AudioNode>> free
+            = new HashMap<String, ArrayList<AudioNode>>();
+
+    // least recently used first
+    private LinkedHashMap<String, AudioData> samples = new LinkedHashMap<String, AudioData>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AudioData> eldest) {
+            return size() > MAX_SAMPLES;
+        }
+    };
+
+
+    /**
+     * Returns a free node for the sample, or null if there is none
+     */
+    public synchronized AudioNode obtain(String samplePath) {
+        ArrayList<AudioNode> list = free.get(samplePath);
+        if (list == null || list.isEmpty())
+            return null;
+        return list.remove(list.size() - 1);
+    }
+
+
+    /**
+     * Returns a new node for the sample. Samples are decoded outside of the
+     * lock, the same one may be decoded twice if two threads ask at once.
+     */
+    public AudioNode create(AssetManager assetManager, String samplePath) {
+        AudioKey key = new AudioKey(samplePath, false, true);
+        AudioData data;
+        synchronized (this) {
+            data = samples.get(samplePath);
+        }
+
+        if (data == null) {
+            data = assetManager.loadAsset(key);
+            synchronized (this) {
+                samples.put(samplePath, data);
+            }
+        }
+
+        return new AudioNode(data, key);
+    }
+
+
+    /**
+     * Hands a node back, it must not be registered with the sound controller
+     */
+    public synchronized void recycle(String samplePath, AudioNode node) {
+        ArrayList<AudioNode> list = free.get(samplePath);
+        if (list == null) {
+            list = new ArrayList<AudioNode>();
+            free.put(samplePath, list);
+        }
+
+        if (list.size() < MAX_PER_SAMPLE)
+            list.add(node);
+    }
+
+}
@@ -6,6 +6,7 @@ import com.jme3.audio.AudioNode;
 import com.jme3.audio.LowPassFilter;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import pt.edj.cp.app.FrameProfilerState;
 import pt.edj.cp.app.IngameState;
 import pt.edj.cp.audio.SoundController;
 
@@ -16,6 +17,7 @@ import pt.edj.cp.audio.SoundController;
 public class SoundObject{
     
     private AudioNode sound;
+    private String samplePath;
     private float[] pitches;
     private int nextIndex;
     private SimpleApplication app;
@@ -23,11 +25,14 @@ public class SoundObject{
     private Random rnd;
     private boolean currentEvent;
     private boolean melodic;
+    private AudioNodePool audioNodes;
     
     
-    public SoundObject(Application app, String samplePath, float[] currChord){
+    public SoundObject(Application app, String samplePath, float[] currChord, AudioNodePool audioNodes){
         this.app = (SimpleApplication) app;
+        this.audioNodes = audioNodes;
         this.nextIndex = 0;
+        this.samplePath = samplePath;
         this.sound = createAudioNode(samplePath);
         this.pattern = new RhythmPattern(16, getSampleLength());
         this.pitches = createPitchPattern(currChord);
@@ -36,6 +41,25 @@ public class SoundObject{
     }
     
     
+    /*
+     * re-initializes a recycled sound object, the audio node is only replaced
+     * if the sample changed, and then taken from the pool if possible
+     */
+    public void reset(String samplePath, float[] currChord){
+        if (!samplePath.equals(this.samplePath)) {
+            audioNodes.recycle(this.samplePath, sound);
+            this.samplePath = samplePath;
+            this.sound = createAudioNode(samplePath);
+            this.melodic = samplePath.contains("elodic"); //TEMP
+        }
+        
+        this.nextIndex = 0;
+        this.currentEvent = false;
+        this.pattern = new RhythmPattern(16, getSampleLength());
+        this.pitches = createPitchPattern(currChord);
+    }
+    
+    
     public final float getSampleLength(){
         if (sound != null)
             return sound.getAudioData().getDuration();
@@ -72,12 +96,24 @@ public class SoundObject{
     
     Callable<Boolean> playSound = new Callable<Boolean>() {
         public Boolean call(){
+            long start = FrameProfilerState.begin();
             sound.playInstance();
+            FrameProfilerState.end(FrameProfilerState.AUDIO, start);
             return true;
         }
     };
     
     
+    /*
+     * registers the sound with the sound controller, has to be called on the
+     * render thread
+     */
+    public void link(){
+        app.getStateManager().getState(IngameState.class)
+                .getSoundController().register(sound);
+    }
+    
+    
     public void kill(){
         app.getStateManager().getState(IngameState.class)
                 .getSoundController().unregister(sound);
@@ -85,12 +121,14 @@ public class SoundObject{
     
     
     private AudioNode createAudioNode(String samplePath){
-        AudioNode an = new AudioNode(app.getAssetManager(), samplePath);
+        AudioNode an = audioNodes.obtain(samplePath);
+        if (an != null)
+            return an;
+        
+        an = audioNodes.create(app.getAssetManager(), samplePath);
         an.setPositional(false);
         an.setVolume(1);
         an.setName((melodic?"melodic":"") + an.toString() + an.hashCode());
-        app.getStateManager().getState(IngameState.class)
-                .getSoundController().register(an);
         return an;
     }
 
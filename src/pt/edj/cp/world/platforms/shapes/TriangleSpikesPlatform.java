@@ -1,7 +1,6 @@
 package pt.edj.cp.world.platforms.shapes;
 
 import com.jme3.app.SimpleApplication;
-import com.jme3.bullet.collision.shapes.BoxCollisionShape;
 import com.jme3.bullet.collision.shapes.CollisionShape;
 import com.jme3.material.Material;
 import com.jme3.material.RenderState;
@@ -12,9 +11,10 @@ import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.util.BufferUtils;
 import java.nio.FloatBuffer;
-import java.util.Random;
+import pt.edj.cp.physics.CollisionShapeCache;
 import pt.edj.cp.timing.GameThemeController;
 import pt.edj.cp.util.ColorHelper;
+import pt.edj.cp.util.HashRandom;
 import pt.edj.cp.world.platforms.PlatformItem;
 
 
@@ -23,67 +23,46 @@ public class TriangleSpikesPlatform extends PlatformItem {
     private Geometry lineGeometry;
     private Material trianglesMat;
     
+    private Mesh triMesh;
+    private Mesh lineMesh;
+    private FloatBuffer vertsBuffer;
+    private FloatBuffer colorBuffer;
+    private FloatBuffer lineColorBuffer;
+    
+    private int tris;
     private float width;
     private float height;
     private float depth;
     
-    private static Random random = new Random();
+    // set in reset(), every draw takes the next stream
+    private long seed;
+    private int stream;
+    
+    private float nextFloat() {
+        return HashRandom.nextFloat(seed, stream++);
+    }
     
-    private static float rdm(float min, float max) {
-        return min + (max - min) * random.nextFloat();
+    private float rdm(float min, float max) {
+        return min + (max - min) * nextFloat();
     }
     
-    public TriangleSpikesPlatform(SimpleApplication app) {
+    /**
+     * Creates the buffers and geometries for the given number of spikes, the
+     * actual shape is filled in by reset()
+     */
+    public TriangleSpikesPlatform(SimpleApplication app, int tris) {
         super();
         
-        int tris = 3 + random.nextInt(4);
-        width = tris * rdm(0.4f, 0.6f);
-        height = rdm(0.4f, 0.6f);
+        this.tris = tris;
         depth = 1.0f;
         
-        // create vertex arrays 
-        Vector3f verts[] = new Vector3f[3 * tris];
-        Vector4f colors[] = new Vector4f[3 * tris];
-        Vector4f lineColors[] = new Vector4f[3 * tris];
-        int lineIndices[] = new int[6 * tris];
-        
-        float temperature = GameThemeController.instance().getParameter("Temperature");
+        // create buffer objects
+        vertsBuffer = BufferUtils.createFloatBuffer(3 * 3 * tris);
+        colorBuffer = BufferUtils.createFloatBuffer(4 * 3 * tris);
+        lineColorBuffer = BufferUtils.createFloatBuffer(4 * 3 * tris);
         
-        // fill vertex arrays
+        int lineIndices[] = new int[6 * tris];
         for (int i = 0; i < tris; i++) {
-            float startX = (float) i / (1 + tris);
-            float endX = (float) (i+2) / (1 + tris);
-            
-            if (i != 0)
-                startX += rdm(-0.3f, 0.3f) / (1 + tris);
-            if (i != tris-1)
-                endX += rdm(-0.3f, 0.3f) / (1 + tris);
-            
-            float x1 = (-0.5f + startX) * width;
-            float x2 = (-0.5f + endX) * width;
-            float xm = x1 + (x2-x1) * rdm(0.3f, 0.7f);
-            float topX = 0.5f * height;
-            float bottomX = (-0.4f - 0.2f * random.nextFloat()) * height;
-            float d = rdm(0.01f, 0.02f);
-            
-            verts[3*i + 0] = new Vector3f(x1, topX, d);
-            verts[3*i + 1] = new Vector3f(xm, bottomX, d);
-            verts[3*i + 2] = new Vector3f(x2, topX, d);
-            
-            float hue = random.nextFloat();
-            float sat = 0.4f + 0.2f * random.nextFloat();
-            float alpha = 0.4f + 0.2f * random.nextFloat();
-            
-            Vector4f color = ColorHelper.computeFromTemperature(
-                    temperature, hue, sat, 0.5f, alpha);
-            Vector4f lineColor = ColorHelper.computeFromTemperature(
-                    temperature, hue, sat, 0.8f, alpha);
-            
-            for (int k = 0; k < 3; k++) {
-                colors[3*i + k] = color;
-                lineColors[3*i + k] = lineColor;
-            }
-            
             lineIndices[6*i + 0] = 3*i + 0;
             lineIndices[6*i + 1] = 3*i + 1;
             lineIndices[6*i + 2] = 3*i + 1;
@@ -92,20 +71,15 @@ public class TriangleSpikesPlatform extends PlatformItem {
             lineIndices[6*i + 5] = 3*i + 0;
         }
         
-        // create buffer objects
-        FloatBuffer vertsBuffer = BufferUtils.createFloatBuffer(verts);
-        FloatBuffer colorBuffer = BufferUtils.createFloatBuffer(colors);
-        FloatBuffer lineColorBuffer = BufferUtils.createFloatBuffer(lineColors);
-        
         // create triangle mesh
-        Mesh triMesh = new Mesh();
+        triMesh = new Mesh();
         triMesh.setBuffer(VertexBuffer.Type.Position, 3, vertsBuffer);
         triMesh.setBuffer(VertexBuffer.Type.Color, 4, colorBuffer);
         triMesh.setMode(Mesh.Mode.Triangles);
         
-        // create line mesh
-        Mesh lineMesh = new Mesh();
-        lineMesh.setBuffer(VertexBuffer.Type.Position, 3, vertsBuffer);
+        // create line mesh, it shares the position buffer
+        lineMesh = new Mesh();
+        lineMesh.setBuffer(triMesh.getBuffer(VertexBuffer.Type.Position));
         lineMesh.setBuffer(VertexBuffer.Type.Color, 4, lineColorBuffer);
         lineMesh.setBuffer(VertexBuffer.Type.Index, 2, lineIndices);
         lineMesh.setMode(Mesh.Mode.Lines);
@@ -128,9 +102,80 @@ public class TriangleSpikesPlatform extends PlatformItem {
         this.attachChild(lineGeometry);
     }
     
+    /**
+     * Generates a new random shape into the existing buffers
+     */
+    @Override
+    public void reset(long seed, Vector3f extents) {
+        this.seed = seed;
+        this.stream = 0;
+        
+        width = tris * rdm(0.4f, 0.6f);
+        height = rdm(0.4f, 0.6f);
+        
+        float temperature = GameThemeController.instance().getParameter("Temperature");
+        
+        vertsBuffer.clear();
+        colorBuffer.clear();
+        lineColorBuffer.clear();
+        
+        // fill vertex arrays
+        for (int i = 0; i < tris; i++) {
+            float startX = (float) i / (1 + tris);
+            float endX = (float) (i+2) / (1 + tris);
+            
+            if (i != 0)
+                startX += rdm(-0.3f, 0.3f) / (1 + tris);
+            if (i != tris-1)
+                endX += rdm(-0.3f, 0.3f) / (1 + tris);
+            
+            float x1 = (-0.5f + startX) * width;
+            float x2 = (-0.5f + endX) * width;
+            float xm = x1 + (x2-x1) * rdm(0.3f, 0.7f);
+            float topX = 0.5f * height;
+            float bottomX = (-0.4f - 0.2f * nextFloat()) * height;
+            float d = rdm(0.01f, 0.02f);
+            
+            vertsBuffer.put(x1).put(topX).put(d);
+            vertsBuffer.put(xm).put(bottomX).put(d);
+            vertsBuffer.put(x2).put(topX).put(d);
+            
+            float hue = nextFloat();
+            float sat = 0.4f + 0.2f * nextFloat();
+            float alpha = 0.4f + 0.2f * nextFloat();
+            
+            Vector4f color = ColorHelper.computeFromTemperature(
+                    temperature, hue, sat, 0.5f, alpha);
+            Vector4f lineColor = ColorHelper.computeFromTemperature(
+                    temperature, hue, sat, 0.8f, alpha);
+            
+            for (int k = 0; k < 3; k++) {
+                colorBuffer.put(color.x).put(color.y).put(color.z).put(color.w);
+                lineColorBuffer.put(lineColor.x).put(lineColor.y).put(lineColor.z).put(lineColor.w);
+            }
+        }
+        
+        vertsBuffer.flip();
+        colorBuffer.flip();
+        lineColorBuffer.flip();
+        
+        // also updates the line mesh, see the constructor
+        triMesh.getBuffer(VertexBuffer.Type.Position).updateData(vertsBuffer);
+        triMesh.getBuffer(VertexBuffer.Type.Color).updateData(colorBuffer);
+        lineMesh.getBuffer(VertexBuffer.Type.Color).updateData(lineColorBuffer);
+        triMesh.updateBound();
+        lineMesh.updateBound();
+        triGeometry.updateModelBound();
+        lineGeometry.updateModelBound();
+    }
+    
+    public int getTriangleCount() {
+        return tris;
+    }
+    
     @Override
     public CollisionShape getCollisionShape() {
-        return new BoxCollisionShape(getExtents().mult(0.5f));
+        return CollisionShapeCache.getBox(getExtents().multLocal(0.5f));
     }
     
     public Vector3f getExtents() {
@@ -0,0 +1,46 @@
+package pt.edj.cp.world.spawners;
+
+
+/**
+ * Bitset helpers, and a batch implementation that evaluates one zone at a time
+ */
+public abstract class AbstractSpawner implements ISpawner {
+    
+    public long[] shouldPlacePlatforms(int x1, int y1, int x2, int y2, long[] bits) {
+        int w = x2 - x1 + 1;
+        bits = clear(bits, w * (y2 - y1 + 1));
+        
+        for (int y = y1; y <= y2; y++)
+            for (int x = x1; x <= x2; x++)
+                if (shouldPlacePlatform(x, y))
+                    set(bits, (y - y1) * w + (x - x1));
+        
+        return bits;
+    }
+    
+    
+    /**
+     * Returns a zeroed bitset with room for at least count bits, reusing the
+     * given one if possible
+     */
+    public static long[] clear(long[] bits, int count) {
+        int words = (count + 63) >>> 6;
+        if (bits == null || bits.length < words)
+            return new long[words];
+        
+        for (int i = 0; i < words; i++)
+            bits[i] = 0L;
+        return bits;
+    }
+    
+    
+    public static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+    
+    
+    public static boolean isSet(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+    
+}
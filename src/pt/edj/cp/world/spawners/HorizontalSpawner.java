@@ -0,0 +1,61 @@
+package pt.edj.cp.world.spawners;
+
+import pt.edj.cp.util.HashRandom;
+import pt.edj.cp.util.IntMath;
+
+
+/**
+ * Generate horizontal platform lines
+ */
+public class HorizontalSpawner extends AbstractSpawner {
+    
+    private static final int STREAM = 9;     // period, offset, length
+    
+    private HashRandom random;
+    
+    public HorizontalSpawner(HashRandom random) {
+        this.random = random;
+    }
+    
+    public boolean shouldPlacePlatform(int x, int y) {
+        // get y-dependent spacing
+        int period = 30 + random.nextInt(0, y, STREAM, 10);
+        int offset = random.nextInt(0, y, STREAM + 1, period);
+        
+        // get x-dependent length
+        int number = (x - offset) / period;
+        int length = 10 + random.nextInt(number, y, STREAM + 2, 6);
+        
+        int within = IntMath.posMod(x - offset, period);
+        return within < length;
+    }
+    
+    // Computes the spacing once per row and the length once per segment
+    @Override
+    public long[] shouldPlacePlatforms(int x1, int y1, int x2, int y2, long[] bits) {
+        int w = x2 - x1 + 1;
+        bits = clear(bits, w * (y2 - y1 + 1));
+        
+        for (int y = y1; y <= y2; y++) {
+            int period = 30 + random.nextInt(0, y, STREAM, 10);
+            int offset = random.nextInt(0, y, STREAM + 1, period);
+            int row = (y - y1) * w;
+            
+            int number = (x1 - offset) / period;
+            int length = 10 + random.nextInt(number, y, STREAM + 2, 6);
+            
+            for (int x = x1; x <= x2; x++) {
+                int n = (x - offset) / period;
+                if (n != number) {
+                    number = n;
+                    length = 10 + random.nextInt(number, y, STREAM + 2, 6);
+                }
+                
+                if (IntMath.posMod(x - offset, period) < length)
+                    set(bits, row + (x - x1));
+            }
+        }
+        
+        return bits;
+    }
+}
@@ -0,0 +1,19 @@
+package pt.edj.cp.world.spawners;
+
+
+/**
+ * Decide whether or not to place a new platform at the given spot
+ */
+public interface ISpawner {
+    
+    public boolean shouldPlacePlatform(int x, int y);
+    
+    /**
+     * Decides for all zones within [x1, x2] x [y1, y2] at once. The result is
+     * a bitset in row order: bit i stands for the zone (x1 + i % w, y1 + i / w),
+     * w being the width of the rect. The given array is reused if it is large
+     * enough, otherwise a new one is returned.
+     */
+    public long[] shouldPlacePlatforms(int x1, int y1, int x2, int y2, long[] bits);
+    
+}
@@ -0,0 +1,45 @@
+package pt.edj.cp.world.spawners;
+
+import pt.edj.cp.util.NoiseField;
+
+
+/**
+ * Use noise to create more cluster-like platform density
+ */
+public class NoiseSpawner extends AbstractSpawner {
+    
+    float stretch;
+    private float threshold;
+    private NoiseField noise;
+    
+    /**
+     * The field's z value picks the slice through the 3D noise, so it should be
+     * derived from the world seed
+     */
+    public NoiseSpawner(NoiseField noise, float stretch, float th) {
+        this.noise = noise;
+        this.stretch = stretch;
+        this.threshold = th;
+    }
+    
+    public boolean shouldPlacePlatform(int x, int y) {
+        float v = noise.sampleFilled(x / stretch, y / stretch);
+        return (v + 0.5f) < threshold;
+    }
+    
+    @Override
+    public long[] shouldPlacePlatforms(int x1, int y1, int x2, int y2, long[] bits) {
+        int w = x2 - x1 + 1;
+        bits = clear(bits, w * (y2 - y1 + 1));
+        
+        for (int y = y1; y <= y2; y++) {
+            float ny = y / stretch;
+            int row = (y - y1) * w;
+            for (int x = x1; x <= x2; x++)
+                if (noise.sampleFilled(x / stretch, ny) + 0.5f < threshold)
+                    set(bits, row + (x - x1));
+        }
+        
+        return bits;
+    }
+}
@@ -0,0 +1,51 @@
+package pt.edj.cp.world.spawners;
+
+import pt.edj.cp.util.HashRandom;
+
+
+/**
+ * Use random choice to make choice for each zone
+ */
+public class RandomSpawner extends AbstractSpawner {
+    
+    private static final int STREAM = 8;
+    
+    private HashRandom random;
+    private float threshold;
+    private ISpawner other;
+    
+    public RandomSpawner(HashRandom random, float th) {
+        this(random, th, null);
+    }
+    
+    public RandomSpawner(HashRandom random, float th, ISpawner o) {
+        this.random = random;
+        threshold = th;
+        other = o;
+    }
+    
+    public boolean shouldPlacePlatform(int x, int y) {
+        boolean should = (other != null) ? other.shouldPlacePlatform(x, y) : true;
+        return should && (random.nextFloat(x, y, STREAM) < threshold);
+    }
+    
+    // Only rolls the dice for zones the other spawner accepted
+    @Override
+    public long[] shouldPlacePlatforms(int x1, int y1, int x2, int y2, long[] bits) {
+        if (other == null)
+            return super.shouldPlacePlatforms(x1, y1, x2, y2, bits);
+        
+        int w = x2 - x1 + 1;
+        bits = other.shouldPlacePlatforms(x1, y1, x2, y2, bits);
+        
+        for (int y = y1; y <= y2; y++) {
+            for (int x = x1; x <= x2; x++) {
+                int i = (y - y1) * w + (x - x1);
+                if (isSet(bits, i) && random.nextFloat(x, y, STREAM) >= threshold)
+                    bits[i >>> 6] &= ~(1L << i);
+            }
+        }
+        
+        return bits;
+    }
+}
@@ -0,0 +1,180 @@
+package pt.edj.cp.world.spawners;
+
+import pt.edj.cp.util.HashRandom;
+import pt.edj.cp.util.IntMath;
+
+
+/**
+ * Generates horizontal platform slides in regions of 4x3 zones, connected
+ * vertically by ladders
+ */
+public class RegionSpawner extends AbstractSpawner {
+    private static final int STREAM = 12;    // period, offset, length, up
+    
+    private static final int regionSizeX = 4;
+    private static final int regionSizeY = 3;
+    
+    // Regions are memoized in a direct-mapped table indexed by the low
+    // bits of their coordinates. As the player moves on, regions that are
+    // left behind are simply overwritten by the newly entered ones. Every
+    // thread gets a table of its own, so the spawner may be asked from the
+    // zone streaming workers as well.
+    private static final int CACHE_BITS = 4;
+    private static final int CACHE_MASK = (1 << CACHE_BITS) - 1;
+    
+    private final ThreadLocal<RegionCache> caches = new ThreadLocal<RegionCache>() {
+        @Override
+        protected RegionCache initialValue() {
+            return new RegionCache();
+        }
+    };
+    
+    private HashRandom random;
+        
+    public RegionSpawner(HashRandom random) {
+        this.random = random;
+    }
+    
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+    
+    private class RegionCache {
+        long[] keys = new long[1 << (2 * CACHE_BITS)];
+        Region[] regions = new Region[1 << (2 * CACHE_BITS)];
+        
+        Region getRegion(int x, int y) {
+            int i = ((y & CACHE_MASK) << CACHE_BITS) | (x & CACHE_MASK);
+            long key = pack(x, y);
+            
+            Region region = regions[i];
+            if (region == null) {
+                region = regions[i] = new Region(this);
+                region.init(x, y);
+                keys[i] = key;
+            } else if (keys[i] != key) {
+                region.init(x, y);
+                keys[i] = key;
+            }
+            
+            return region;
+        }
+    }
+    
+    private class Region {
+        final RegionCache cache;
+        int x;
+        int y;
+        int within;
+        int segmentLen;
+        boolean exists;
+        boolean connectionUp;
+        int verticalConnection;     // -1 = not computed yet
+        
+        Region(RegionCache cache) {
+            this.cache = cache;
+        }
+        
+        void init(int xx, int yy) {
+            x = xx;
+            y = yy;
+            verticalConnection = -1;
+            
+            // get y-dependent spacing
+            float period = 4.5f + 2.f * random.nextFloat(0, y, STREAM);
+            int offset = random.nextInt(0, y, STREAM + 1, (int) period);
+
+            // get x-dependent length
+            int number = (int) Math.floor((x - offset) / period);
+            segmentLen = 2 + random.nextInt(number, y, STREAM + 2, (int)period - 2);
+            
+            // within slice:
+            within = (int) (x - offset - number * period);
+            exists = (within < segmentLen);
+            connectionUp = random.nextBoolean(number, y, STREAM + 3);
+        }
+        
+        boolean hasLeft() {
+            return within > 0;
+        }
+        
+        boolean hasRight() {
+            return within < (segmentLen-1);
+        }
+        
+        boolean hasVerticalConnection() {
+            if (verticalConnection < 0) {
+                // the neighbor never shares a cache slot with this region
+                Region other = cache.getRegion(x, connectionUp ? y+1 : y-1);
+                boolean connected = exists && other.exists
+                        && other.connectionUp != connectionUp;
+                verticalConnection = connected ? 1 : 0;
+            }
+            
+            return verticalConnection > 0;
+        }
+        
+        boolean placesPlatform(int relX, int relY) {
+            if (!exists)
+                return false;
+
+            // is this coordinate on the slide of this (existing) region?
+            if (relY == 1) {
+                if (hasLeft() && relX < 3
+                        || hasRight() && relX > 0
+                        || relX > 0 && relX < 3)
+                    return true;
+                return true;
+            }
+
+            // is there a connection to another plaform?
+            if (hasVerticalConnection()) {
+                boolean goesUp = connectionUp;
+                boolean goesLeft = y % 2 == 0;
+
+                // generate ladder position
+                int ly = goesUp ? 2 : 0;
+                int lx = goesLeft ? 1 : 2;
+                if (relX == lx && relY == ly)
+                    return true;
+            }
+
+            return false;
+        }
+    }
+
+    public boolean shouldPlacePlatform(int x, int y) {
+        Region region = caches.get().getRegion(IntMath.floorDiv(x, regionSizeX), IntMath.floorDiv(y, regionSizeY));
+        return region.placesPlatform(IntMath.posMod(x, regionSizeX), IntMath.posMod(y, regionSizeY));
+    }
+    
+    // Walks the rect region by region, so every region is looked up once
+    // for all of its cells
+    @Override
+    public long[] shouldPlacePlatforms(int x1, int y1, int x2, int y2, long[] bits) {
+        int w = x2 - x1 + 1;
+        bits = clear(bits, w * (y2 - y1 + 1));
+        RegionCache cache = caches.get();
+        
+        for (int ry = IntMath.floorDiv(y1, regionSizeY); ry <= IntMath.floorDiv(y2, regionSizeY); ry++) {
+            int oy = ry * regionSizeY;
+            int cy1 = Math.max(y1, oy);
+            int cy2 = Math.min(y2, oy + regionSizeY - 1);
+            
+            for (int rx = IntMath.floorDiv(x1, regionSizeX); rx <= IntMath.floorDiv(x2, regionSizeX); rx++) {
+                int ox = rx * regionSizeX;
+                int cx1 = Math.max(x1, ox);
+                int cx2 = Math.min(x2, ox + regionSizeX - 1);
+                
+                Region region = cache.getRegion(rx, ry);
+                for (int y = cy1; y <= cy2; y++)
+                    for (int x = cx1; x <= cx2; x++)
+                        if (region.placesPlatform(x - ox, y - oy))
+                            set(bits, (y - y1) * w + (x - x1));
+            }
+        }
+        
+        return bits;
+    }
+    
+}